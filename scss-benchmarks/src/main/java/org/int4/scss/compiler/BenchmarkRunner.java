@@ -0,0 +1,36 @@
+package org.int4.scss.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks like the JMH command line does, but writes the results
+ * as JSON to {@code jmh-result.json} by default, so the results of different
+ * versions can be compared. Another format or file can be selected with the
+ * usual {@code -rf} and {@code -rff} options.
+ */
+public class BenchmarkRunner {
+
+  /**
+   * Runs the benchmarks selected by the given JMH command line arguments.
+   *
+   * @param args JMH command line arguments
+   * @throws Exception when running the benchmarks failed
+   */
+  public static void main(String[] args) throws Exception {
+    List<String> arguments = new ArrayList<>(Arrays.asList(args));
+
+    if(!arguments.contains("-rf")) {
+      arguments.addAll(List.of("-rf", "json"));
+    }
+
+    if(!arguments.contains("-rff")) {
+      arguments.addAll(List.of("-rff", "jmh-result.json"));
+    }
+
+    Main.main(arguments.toArray(String[]::new));
+  }
+}
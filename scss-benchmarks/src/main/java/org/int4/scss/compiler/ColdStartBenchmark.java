@@ -0,0 +1,65 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the first compilation in a fresh JVM, which includes loading the
+ * classes, extracting the Dart Sass compiler and starting its process. The
+ * compiler is extracted into an empty directory for every fork, unless it is
+ * already installed in the default location.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class ColdStartBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Fixture {
+    Stylesheets stylesheets;
+    Path scss;
+    Path installDirectory;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      stylesheets = new Stylesheets();
+      scss = stylesheets.create("fixture");
+      installDirectory = Files.createTempDirectory("scss-benchmark-install-");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      stylesheets.close();
+      Stylesheets.delete(installDirectory);
+    }
+  }
+
+  @Benchmark
+  public String firstCompileIncludingExtraction(Fixture fixture) throws IOException {
+    System.setProperty("org.int4.scss.cache.dir", fixture.installDirectory.toString());
+
+    return SCSSCompiler.of(fixture.stylesheets.root()).asString(fixture.scss);
+  }
+
+  @Benchmark
+  public String firstCompileWithInstalledCompiler(Fixture fixture) throws IOException {
+    return SCSSCompiler.of(fixture.stylesheets.root()).asString(fixture.scss);
+  }
+}
@@ -0,0 +1,77 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of a single compilation with a warmed up compiler, for
+ * each of the output forms, and for stylesheets ranging from the small test
+ * fixture up to generated themes of several megabytes. The compiler has no
+ * cache, so each invocation compiles.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompileLatencyBenchmark {
+  @Param({"fixture", "100KB", "1MB", "4MB"})
+  private String size;
+
+  private Stylesheets stylesheets;
+  private SCSSCompiler compiler;
+  private Path scss;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    stylesheets = new Stylesheets();
+    compiler = SCSSCompiler.of(stylesheets.root());
+    scss = stylesheets.create(size);
+
+    compiler.asString(scss);  // starts the compiler process
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    stylesheets.close();
+  }
+
+  @Benchmark
+  public String asString() throws IOException {
+    return compiler.asString(scss);
+  }
+
+  @Benchmark
+  public String asURIString() throws IOException {
+    return compiler.asURIString(scss);
+  }
+
+  @Benchmark
+  public byte[] asStream() throws IOException {
+    try(InputStream stream = compiler.asStream(scss, line -> {})) {
+      return stream.readAllBytes();
+    }
+  }
+
+  @Benchmark
+  public CompiledStylesheet compile() throws IOException {
+    return compiler.compile(scss);
+  }
+}
@@ -0,0 +1,101 @@
+package org.int4.scss.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares creating a data URI string from compiled CSS by streaming it through
+ * a base64 encoding output stream into a {@link StringBuilder}, as was done
+ * before, with encoding it into an exactly sized Latin-1 byte array. Run with
+ * {@code -prof gc} to compare the garbage created as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataURIBenchmark {
+  @Param({"4096", "409600"})
+  private int size;
+
+  private byte[] css;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random random = new Random(42);
+    StringBuilder builder = new StringBuilder();
+
+    while(builder.length() < size) {
+      builder.append(".c").append(random.nextInt(10000)).append("{color:#").append(Integer.toHexString(random.nextInt(0x1000000))).append("}");
+    }
+
+    css = builder.substring(0, size).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public String streamIntoStringBuilder() throws IOException {
+    StringBuilder builder = new StringBuilder();
+
+    builder.append("data:text/css;charset=UTF-8;base64,");
+
+    try(
+      InputStream stdout = new ByteArrayInputStream(css);
+      OutputStream outputStream = new ASCIIStringBuilderOutputStream(builder);
+      OutputStream wrap = Base64.getEncoder().wrap(outputStream)
+    ) {
+      stdout.transferTo(wrap);
+    }
+
+    return builder.toString();
+  }
+
+  @Benchmark
+  public String encodeIntoByteArray() {
+    return DataURI.of(css).toString();
+  }
+
+  @Benchmark
+  public StringBuilder appendToStringBuilder() throws IOException {
+    StringBuilder builder = new StringBuilder();
+
+    DataURI.of(css).appendTo(builder);
+
+    return builder;
+  }
+
+  /*
+   * The output stream previously used for creating data URIs:
+   */
+  private static class ASCIIStringBuilderOutputStream extends OutputStream {
+    private final StringBuilder builder;
+
+    ASCIIStringBuilderOutputStream(StringBuilder builder) {
+      this.builder = builder;
+    }
+
+    @Override
+    public void write(int b) {
+      builder.append((char)b);
+    }
+  }
+}
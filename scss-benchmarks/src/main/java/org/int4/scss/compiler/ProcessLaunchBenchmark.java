@@ -0,0 +1,79 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares compiling a small stylesheet with a freshly started command line
+ * compiler, launched either through the wrapper script that comes with Dart Sass
+ * or by starting the Dart runtime directly. The difference is the cost saved for
+ * every process started.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessLaunchBenchmark {
+  private Path directory;
+  private Path scss;
+  private List<String> wrapperCommand;
+  private List<String> directCommand;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    wrapperCommand = SCSSCompiler.wrapperCommand();
+    directCommand = SCSSCompiler.sassCommand();
+    directory = Files.createTempDirectory("scss-benchmark-");
+    scss = Files.writeString(directory.resolve("styles.scss"), "$color: red;\n.container { color: $color; .header { background-color: $color; } }\n");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.delete(scss);
+    Files.delete(directory);
+  }
+
+  @Benchmark
+  public byte[] compileThroughWrapperScript() throws IOException, InterruptedException {
+    return compile(wrapperCommand);
+  }
+
+  @Benchmark
+  public byte[] compileWithDirectLaunch() throws IOException, InterruptedException {
+    return compile(directCommand);
+  }
+
+  private byte[] compile(List<String> baseCommand) throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>(baseCommand);
+
+    command.addAll(List.of("--no-source-map", "--style", "compressed", scss.toString()));
+
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    byte[] output = process.getInputStream().readAllBytes();
+
+    if(process.waitFor() != 0) {
+      throw new IllegalStateException("Compilation failed: " + new String(output));
+    }
+
+    return output;
+  }
+}
@@ -0,0 +1,121 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Creates the stylesheets compiled by the benchmarks in a temporary directory.
+ * Besides the small fixture also used by the tests, themes of roughly a given
+ * size are generated, using modules, maps, mixins and loops like real themes
+ * do. Generation is deterministic, so results of different runs are
+ * comparable.
+ */
+final class Stylesheets implements AutoCloseable {
+  private static final String FIXTURE = "@use \"colors\";\n\n.container {\n  color: colors.$primary-color;\n  .header {\n    background-color: colors.$primary-color;\n  }\n}\n";
+
+  private final Path directory;
+
+  Stylesheets() {
+    try {
+      this.directory = Files.createTempDirectory("scss-benchmark-");
+
+      Files.writeString(directory.resolve("_colors.scss"), "$primary-color: red;\n");
+    }
+    catch(IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns the root directory of the stylesheets.
+   *
+   * @return a {@link Path}, never {@code null}
+   */
+  Path root() {
+    return directory;
+  }
+
+  /**
+   * Writes a stylesheet of the given size, and returns its path.
+   *
+   * @param size either {@code "fixture"}, or a size in bytes with an optional {@code KB} or {@code MB} suffix
+   * @return a {@link Path} to a SCSS file, never {@code null}
+   */
+  Path create(String size) {
+    try {
+      return Files.writeString(directory.resolve("theme-" + size + ".scss"), source(size));
+    }
+    catch(IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns the source of a stylesheet of the given size, which can be compiled
+   * with {@link #root()} as root.
+   *
+   * @param size either {@code "fixture"}, or a size in bytes with an optional {@code KB} or {@code MB} suffix
+   * @return a stylesheet, never {@code null}
+   */
+  static String source(String size) {
+    return size.equals("fixture") ? FIXTURE : generate(parseSize(size));
+  }
+
+  @Override
+  public void close() throws IOException {
+    delete(directory);
+  }
+
+  /**
+   * Deletes the given directory, including its contents.
+   *
+   * @param directory a directory to delete, cannot be {@code null}
+   * @throws IOException when an IO error occurred
+   */
+  static void delete(Path directory) throws IOException {
+    try(Stream<Path> stream = Files.walk(directory)) {
+      for(Path path : stream.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static int parseSize(String size) {
+    if(size.endsWith("MB")) {
+      return Integer.parseInt(size.substring(0, size.length() - 2)) * 1024 * 1024;
+    }
+
+    if(size.endsWith("KB")) {
+      return Integer.parseInt(size.substring(0, size.length() - 2)) * 1024;
+    }
+
+    return Integer.parseInt(size);
+  }
+
+  /*
+   * Each component compiles to roughly 1 KB of CSS:
+   */
+  private static String generate(int targetBytes) {
+    StringBuilder builder = new StringBuilder();
+
+    builder.append("@use \"sass:color\";\n@use \"sass:map\";\n@use \"colors\";\n\n");
+    builder.append("$shades: (\"light\": 20%, \"normal\": 0%, \"dark\": -20%);\n");
+    builder.append("$sizes: (\"s\": 4px, \"m\": 8px, \"l\": 16px);\n\n");
+    builder.append("@mixin button($color, $padding) {\n  padding: $padding $padding * 2;\n  border: 1px solid color.adjust($color, $lightness: -10%);\n  background: $color;\n  &:hover { background: color.adjust($color, $lightness: 10%); }\n}\n\n");
+
+    for(int i = 0; builder.length() < targetBytes / 2; i++) {
+      builder.append(".component-").append(i).append(" {\n");
+      builder.append("  color: colors.$primary-color;\n");
+      builder.append("  @each $shade, $amount in $shades {\n");
+      builder.append("    @each $size, $padding in $sizes {\n");
+      builder.append("      &.#{$shade}-#{$size} { @include button(color.adjust(#").append(String.format("%06x", (i * 2654435761L) & 0xffffff)).append(", $lightness: $amount), $padding); }\n");
+      builder.append("    }\n  }\n}\n\n");
+    }
+
+    return builder.toString();
+  }
+}
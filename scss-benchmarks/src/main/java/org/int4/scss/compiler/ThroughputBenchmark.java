@@ -0,0 +1,85 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many compilations per second the default engine completes with
+ * 1, 4, 16 and 64 callers compiling at the same time. Each invocation compiles
+ * a slightly different source, so concurrent compilations are not shared and
+ * nothing is served from a cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThroughputBenchmark {
+  @Param({"fixture", "100KB"})
+  private String size;
+
+  private final AtomicLong counter = new AtomicLong();
+
+  private Stylesheets stylesheets;
+  private SCSSCompiler compiler;
+  private String source;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    stylesheets = new Stylesheets();
+    compiler = SCSSCompiler.of(stylesheets.root());
+    source = Stylesheets.source(size);
+
+    compiler.asString(source, Syntax.SCSS);  // starts the compiler process
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    stylesheets.close();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public String callers1() throws IOException {
+    return compile();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public String callers4() throws IOException {
+    return compile();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public String callers16() throws IOException {
+    return compile();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public String callers64() throws IOException {
+    return compile();
+  }
+
+  private String compile() throws IOException {
+    return compiler.asString(source + "\n// " + counter.incrementAndGet(), Syntax.SCSS);
+  }
+}
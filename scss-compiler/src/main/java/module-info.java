@@ -2,5 +2,8 @@
  * Module containing the Java SCSS Compiler.
  */
 module org.int4.scss.compiler {
+  requires java.management;
+  requires jdk.jfr;
+
   exports org.int4.scss.compiler;
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/*
+ * Loads stylesheets from the resources of a class loader. Canonical URLs have
+ * the form "classpath:/<resource name>".
+ */
+final class ClasspathImporter extends FileResolvingImporter {
+  private static final String SCHEME = "classpath";
+
+  private final ClassLoader classLoader;
+  private final String prefix;
+
+  ClasspathImporter(ClassLoader classLoader, String basePath) {
+    this.classLoader = Objects.requireNonNull(classLoader, "classLoader");
+
+    String path = Objects.requireNonNull(basePath, "basePath");
+
+    while(path.startsWith("/")) {
+      path = path.substring(1);
+    }
+
+    this.prefix = path.isEmpty() || path.endsWith("/") ? path : path + "/";
+  }
+
+  @Override
+  String toRelativePath(URI url) {
+    if(!SCHEME.equals(url.getScheme()) || url.getPath() == null) {
+      return null;
+    }
+
+    String path = url.normalize().getPath();
+
+    return path.startsWith("/" + prefix) ? path.substring(prefix.length() + 1) : null;
+  }
+
+  @Override
+  URI locate(String relativePath) throws IOException {
+    String name = prefix + relativePath;
+
+    if(classLoader.getResource(name) == null) {
+      return null;
+    }
+
+    try {
+      return new URI(SCHEME, null, "/" + name, null);
+    }
+    catch(URISyntaxException e) {
+      throw new IOException("Invalid resource name: " + name, e);
+    }
+  }
+
+  @Override
+  String read(URI canonicalUrl) throws IOException {
+    try(InputStream is = classLoader.getResourceAsStream(canonicalUrl.getPath().substring(1))) {
+      return is == null ? null : new String(is.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package org.int4.scss.compiler;
+
+/**
+ * Receives the progress of the compilations of an {@link SCSSCompiler}, for
+ * example to record them in a tracing system. A listener is configured with
+ * {@link SCSSCompiler.Builder#listener(CompileListener)}.
+ * <p>
+ * Each compilation is identified by an id, unique within the JVM, which is
+ * passed to all callbacks for that compilation. A compilation is reported as
+ * {@link #started(long, String) started}, and ends with either {@link
+ * #completed(long, CompileStats) completed} or {@link #failed(long,
+ * CompileStats, Exception) failed}. When the compilation is performed by a
+ * compiler process, the moment a process was {@link #engineAcquired(long)
+ * acquired} and the moment its {@link #firstByte(long) first output} arrived
+ * are reported in between. These are not reported for compilations served
+ * from an {@link SCSSCache}, or shared with a compilation already in progress
+ * for another caller.
+ * <p>
+ * Callbacks are not necessarily called on the thread which requested the
+ * compilation, and must return quickly. Implementations must be thread safe,
+ * as they can be called by multiple compilations concurrently. Exceptions
+ * thrown by a callback are logged, and do not affect the compilation.
+ * <p>
+ * All callbacks do nothing by default.
+ */
+public interface CompileListener {
+
+  /**
+   * Called when a compilation starts.
+   *
+   * @param id the id of the compilation
+   * @param entry a description of the stylesheet compiled, like its path, never {@code null}
+   */
+  default void started(long id, String entry) {}
+
+  /**
+   * Called when a compiler process was acquired for a compilation, after
+   * waiting for other compilations to complete when the compiler, or its
+   * {@link SCSSEngine}, is fully busy.
+   *
+   * @param id the id of the compilation
+   */
+  default void engineAcquired(long id) {}
+
+  /**
+   * Called when the compiler process produced its first output for a
+   * compilation. This is called on the thread reading the output of the
+   * process, which is held up until this callback returns.
+   *
+   * @param id the id of the compilation
+   */
+  default void firstByte(long id) {}
+
+  /**
+   * Called when a compilation produced CSS.
+   *
+   * @param id the id of the compilation
+   * @param stats the {@link CompileStats} of the compilation, never {@code null}
+   */
+  default void completed(long id, CompileStats stats) {}
+
+  /**
+   * Called when a compilation did not produce CSS, because of an error in a
+   * stylesheet, in which case the cause is an {@link SCSSProcessingException},
+   * or because it could not be completed, in which case the cause is the
+   * exception thrown to the caller.
+   *
+   * @param id the id of the compilation
+   * @param stats the {@link CompileStats} of the compilation, never {@code null}
+   * @param cause the cause of the failure, never {@code null}
+   */
+  default void failed(long id, CompileStats stats, Exception cause) {}
+}
@@ -0,0 +1,91 @@
+package org.int4.scss.compiler;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The result of compiling a single SCSS file with {@link SCSSCompiler#compileAll(Map)}.
+ *
+ * @param input the SCSS file compiled, cannot be {@code null}
+ * @param output the CSS file written, cannot be {@code null}
+ * @param status the {@link Status} of the compilation, cannot be {@code null}
+ * @param errors the errors encountered, cannot be {@code null} but can be empty
+ * @param warnings the warnings encountered, cannot be {@code null} but can be empty
+ * @param deprecations the deprecations encountered, cannot be {@code null} but can be empty
+ * @param stats the {@link CompileStats} of the compilation, cannot be {@code null}
+ */
+public record CompileResult(Path input, Path output, Status status, List<String> errors, List<String> warnings, List<String> deprecations, CompileStats stats) {
+  private static final CompileStats NO_STATS = new CompileStats(Duration.ZERO, Duration.ZERO, 0, 0, 0, 0, 0);
+
+  /**
+   * The outcome of compiling a single SCSS file.
+   */
+  public enum Status {
+
+    /**
+     * The file was compiled, and the output was written.
+     */
+    WRITTEN,
+
+    /**
+     * The file was compiled, and the output already contained the resulting
+     * CSS, so it was left untouched.
+     */
+    UNCHANGED,
+
+    /**
+     * The file could not be compiled, or the output could not be written. The
+     * output was left untouched.
+     */
+    FAILED
+  }
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param input the SCSS file compiled, cannot be {@code null}
+   * @param output the CSS file written, cannot be {@code null}
+   * @param status the {@link Status} of the compilation, cannot be {@code null}
+   * @param errors the errors encountered, cannot be {@code null} but can be empty
+   * @param warnings the warnings encountered, cannot be {@code null} but can be empty
+   * @param deprecations the deprecations encountered, cannot be {@code null} but can be empty
+   * @param stats the {@link CompileStats} of the compilation, cannot be {@code null}
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public CompileResult {
+    Objects.requireNonNull(input, "input");
+    Objects.requireNonNull(output, "output");
+    Objects.requireNonNull(status, "status");
+    Objects.requireNonNull(stats, "stats");
+    errors = List.copyOf(errors);
+    warnings = List.copyOf(warnings);
+    deprecations = List.copyOf(deprecations);
+  }
+
+  /**
+   * Constructs a new instance without statistics; all its statistics are zero.
+   *
+   * @param input the SCSS file compiled, cannot be {@code null}
+   * @param output the CSS file written, cannot be {@code null}
+   * @param status the {@link Status} of the compilation, cannot be {@code null}
+   * @param errors the errors encountered, cannot be {@code null} but can be empty
+   * @param warnings the warnings encountered, cannot be {@code null} but can be empty
+   * @param deprecations the deprecations encountered, cannot be {@code null} but can be empty
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public CompileResult(Path input, Path output, Status status, List<String> errors, List<String> warnings, List<String> deprecations) {
+    this(input, output, status, errors, warnings, deprecations, NO_STATS);
+  }
+
+  /**
+   * Returns whether the file was compiled successfully.
+   *
+   * @return {@code true} if the file was compiled successfully, otherwise {@code false}
+   */
+  public boolean isSuccess() {
+    return status != Status.FAILED;
+  }
+}
@@ -0,0 +1,45 @@
+package org.int4.scss.compiler;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Statistics of a single compilation, passed to a {@link CompileListener},
+ * and available on the {@link CompileResult}s of {@link SCSSCompiler#compileAll(java.util.Map)}.
+ * <p>
+ * The CPU time is the time the compiler process spent on the CPU while the
+ * compilation was in progress. As a process runs multiple compilations
+ * concurrently, it includes time spent on other compilations running at the
+ * same time. It has the resolution the platform reports it with, which can
+ * be as coarse as 10 milliseconds. It is zero when the compilation was served
+ * from an {@link SCSSCache}, was shared with a compilation in progress for
+ * another caller, or when the platform does not report the CPU time of
+ * processes.
+ *
+ * @param wallTime the time the compilation took, including waiting for a compiler process, cannot be {@code null}
+ * @param childCpuTime the CPU time of the compiler process, cannot be {@code null}
+ * @param outputBytes the size of the CSS produced, encoded as UTF-8, in bytes
+ * @param loadedFiles the number of stylesheets loaded, including the stylesheet compiled
+ * @param errors the number of errors
+ * @param warnings the number of warnings
+ * @param deprecations the number of deprecation warnings
+ */
+public record CompileStats(Duration wallTime, Duration childCpuTime, long outputBytes, int loadedFiles, int errors, int warnings, int deprecations) {
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param wallTime the time the compilation took, including waiting for a compiler process, cannot be {@code null}
+   * @param childCpuTime the CPU time of the compiler process, cannot be {@code null}
+   * @param outputBytes the size of the CSS produced, encoded as UTF-8, in bytes
+   * @param loadedFiles the number of stylesheets loaded, including the stylesheet compiled
+   * @param errors the number of errors
+   * @param warnings the number of warnings
+   * @param deprecations the number of deprecation warnings
+   * @throws NullPointerException when {@code wallTime} or {@code childCpuTime} is {@code null}
+   */
+  public CompileStats {
+    Objects.requireNonNull(wallTime, "wallTime");
+    Objects.requireNonNull(childCpuTime, "childCpuTime");
+  }
+}
@@ -0,0 +1,431 @@
+package org.int4.scss.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.Adler32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The CSS resulting from a compilation. The CSS is held once, encoded as UTF-8;
+ * other representations, like a string, a data URI or a compressed body, are
+ * derived from it on first use, and then kept for later use. A compiled
+ * stylesheet is immutable, and can be shared freely between threads.
+ * <p>
+ * For serving the CSS over HTTP, {@link #encodedFor(String)} selects the body
+ * best matching the {@code Accept-Encoding} header of a request. The CSS is
+ * compressed only once for both the gzip and deflate encodings; compilers can
+ * be configured to {@link SCSSCompiler.Builder#precompress(boolean) precompress}
+ * the CSS, and cached stylesheets keep their compressed bodies, so serving
+ * them does no compression work.
+ */
+public final class CompiledStylesheet {
+  private static final int GZIP_HEADER_SIZE = 10;
+  private static final int GZIP_TRAILER_SIZE = 8;
+  private static final List<String> PREFERRED_ENCODINGS = List.of("gzip", "deflate", "identity");
+
+  private final byte[] css;
+
+  /*
+   * Derived representations; computing them more than once when raced is
+   * harmless, as the results are equal:
+   */
+  private volatile String string;
+  private volatile DataURI dataURI;
+  private volatile byte[] gzipped;
+  private volatile String contentHash;
+
+  /*
+   * Called after a derived representation was kept, so the holder of this
+   * stylesheet accounting for its memory, like a cache, can take the growth
+   * into account; null when there is none:
+   */
+  private volatile Runnable growthListener;
+
+  /*
+   * Takes ownership of the given array, which must not be modified afterwards.
+   */
+  CompiledStylesheet(byte[] css) {
+    this.css = Objects.requireNonNull(css, "css");
+  }
+
+  /*
+   * Takes ownership of the given arrays, of which the second must hold the
+   * first compressed in the gzip format, as written by GZIPOutputStream.
+   */
+  CompiledStylesheet(byte[] css, byte[] gzipped) {
+    this.css = Objects.requireNonNull(css, "css");
+    this.gzipped = Objects.requireNonNull(gzipped, "gzipped");
+  }
+
+  static CompiledStylesheet of(String css) {
+    return new CompiledStylesheet(css.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the size of the CSS encoded as UTF-8, in bytes.
+   *
+   * @return the size in bytes, never negative
+   */
+  public int size() {
+    return css.length;
+  }
+
+  /**
+   * Returns a read-only buffer containing the CSS encoded as UTF-8. The buffer
+   * shares the content of this stylesheet, and so is not copied.
+   *
+   * @return a read-only {@link ByteBuffer}, never {@code null}
+   */
+  public ByteBuffer asByteBuffer() {
+    return ByteBuffer.wrap(css).asReadOnlyBuffer();
+  }
+
+  /**
+   * Writes the CSS encoded as UTF-8 to the given stream.
+   *
+   * @param outputStream an {@link OutputStream}, cannot be {@code null}
+   * @throws IOException when an IO error occurred
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public void writeTo(OutputStream outputStream) throws IOException {
+    outputStream.write(css);
+  }
+
+  /**
+   * Returns the CSS as a string.
+   *
+   * @return the CSS, never {@code null}
+   */
+  public String asString() {
+    String string = this.string;
+
+    if(string == null) {
+      string = new String(css, StandardCharsets.UTF_8);
+      this.string = string;
+      grown();
+    }
+
+    return string;
+  }
+
+  /**
+   * Returns a data URI containing the CSS as base64 encoded text. The URI is
+   * returned as a {@link CharSequence}, so it can be appended to a builder or
+   * written to a stream without creating a string holding it; call {@link
+   * Object#toString()} on it to obtain a string.
+   *
+   * @return a data URI, never {@code null}
+   */
+  public CharSequence asDataURI() {
+    return dataURI();
+  }
+
+  /**
+   * Appends a data URI containing the CSS as base64 encoded text to the given
+   * {@link Appendable}, such as a {@link java.io.Writer} or {@link StringBuilder}.
+   * The URI is appended in chunks, without creating a string holding it.
+   *
+   * @param appendable an {@link Appendable}, cannot be {@code null}
+   * @throws IOException when appending failed
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public void appendDataURITo(Appendable appendable) throws IOException {
+    dataURI().appendTo(appendable);
+  }
+
+  private DataURI dataURI() {
+    DataURI dataURI = this.dataURI;
+
+    if(dataURI == null) {
+      dataURI = DataURI.of(css);
+      this.dataURI = dataURI;
+      grown();
+    }
+
+    return dataURI;
+  }
+
+  /**
+   * Returns a data URI containing the CSS as base64 encoded text.
+   *
+   * @return a {@link URI}, never {@code null}
+   */
+  public URI asURI() {
+    return URI.create(asDataURI().toString());
+  }
+
+  /**
+   * Returns a read-only buffer containing the CSS compressed in the gzip
+   * format, suitable as a response body with {@code Content-Encoding: gzip}.
+   *
+   * @return a read-only {@link ByteBuffer}, never {@code null}
+   */
+  public ByteBuffer gzipped() {
+    return ByteBuffer.wrap(gzippedBytes()).asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns a read-only buffer containing the CSS compressed in the zlib
+   * format, suitable as a response body with {@code Content-Encoding: deflate}.
+   * <p>
+   * The body is derived from the {@link #gzipped() gzip body} on each call, as
+   * both formats wrap the same compressed data; this copies the compressed data,
+   * but does not compress the CSS again. Only the gzip body is kept.
+   *
+   * @return a read-only {@link ByteBuffer}, never {@code null}
+   */
+  public ByteBuffer deflated() {
+    return ByteBuffer.wrap(toZlib(gzippedBytes())).asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns the SHA-256 hash of the CSS encoded as UTF-8, as a lowercase
+   * hexadecimal string. Stylesheets with the same content have the same hash,
+   * which makes it suitable as an entity tag, or for cache busting file names.
+   *
+   * @return a hexadecimal string of 64 characters, never {@code null}
+   */
+  public String contentHash() {
+    String contentHash = this.contentHash;
+
+    if(contentHash == null) {
+      try {
+        contentHash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(css));
+        this.contentHash = contentHash;
+        grown();
+      }
+      catch(NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    return contentHash;
+  }
+
+  /**
+   * Returns a strong entity tag for the CSS, suitable for an HTTP {@code ETag}
+   * header. This is the {@link #contentHash() content hash} in double quotes.
+   *
+   * @return an entity tag, never {@code null}
+   */
+  public String entityTag() {
+    return "\"" + contentHash() + "\"";
+  }
+
+  /**
+   * Returns the body best suited for a client sending the given {@code
+   * Accept-Encoding} header. Of the encodings the client accepts with the
+   * highest quality, gzip is preferred over deflate, and deflate over no
+   * encoding at all. A compressed body is only selected when it is smaller
+   * than the CSS itself. When the header is {@code null}, or the client
+   * accepts none of the supported encodings, the CSS is returned unencoded.
+   *
+   * @param acceptEncoding the value of an {@code Accept-Encoding} header, can be {@code null}
+   * @return an {@link EncodedBody}, never {@code null}
+   */
+  public EncodedBody encodedFor(String acceptEncoding) {
+    String encoding = selectEncoding(acceptEncoding);
+
+    if(!encoding.equals("identity") && gzippedBytes().length < css.length) {
+      return encoding.equals("gzip") ? new EncodedBody("gzip", gzipped()) : new EncodedBody("deflate", deflated());
+    }
+
+    return new EncodedBody(null, asByteBuffer());
+  }
+
+  /**
+   * A body for an HTTP response containing the CSS.
+   *
+   * @param contentEncoding the value for the {@code Content-Encoding} header, or {@code null} when the body is not encoded
+   * @param content a read-only {@link ByteBuffer} with the content of the body, never {@code null}
+   */
+  public record EncodedBody(String contentEncoding, ByteBuffer content) {
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param contentEncoding the value for the {@code Content-Encoding} header, or {@code null} when the body is not encoded
+     * @param content a read-only {@link ByteBuffer} with the content of the body, cannot be {@code null}
+     * @throws NullPointerException when {@code content} is {@code null}
+     */
+    public EncodedBody {
+      Objects.requireNonNull(content, "content");
+    }
+  }
+
+  /*
+   * Returns the CSS encoded as UTF-8 without copying it; callers must not
+   * modify the returned array.
+   */
+  byte[] bytes() {
+    return css;
+  }
+
+  /*
+   * Returns the CSS compressed in the gzip format without copying it; callers
+   * must not modify the returned array.
+   */
+  byte[] gzippedBytes() {
+    byte[] gzipped = this.gzipped;
+
+    if(gzipped == null) {
+      gzipped = compress(GZIPOutputStream::new);
+      this.gzipped = gzipped;
+      grown();
+    }
+
+    return gzipped;
+  }
+
+  /*
+   * Returns an estimate of the number of bytes retained by this stylesheet,
+   * including the representations derived so far. Strings are counted at two
+   * bytes per character, plus a fixed amount for headers and references.
+   */
+  long retainedBytes() {
+    String string = this.string;
+    DataURI dataURI = this.dataURI;
+    byte[] gzipped = this.gzipped;
+    String contentHash = this.contentHash;
+
+    return 128 + css.length
+      + (string == null ? 0 : 2L * string.length())
+      + (dataURI == null ? 0 : dataURI.length())  // one byte per character
+      + (gzipped == null ? 0 : gzipped.length)
+      + (contentHash == null ? 0 : 2L * contentHash.length());
+  }
+
+  /*
+   * Sets the listener called each time this stylesheet keeps a newly derived
+   * representation, replacing any previous listener. A stylesheet is held by
+   * at most one cache, which sets the listener while holding it.
+   */
+  void setGrowthListener(Runnable growthListener) {
+    this.growthListener = growthListener;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj == this || obj instanceof CompiledStylesheet other && Arrays.equals(css, other.css);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(css);
+  }
+
+  @Override
+  public String toString() {
+    return "CompiledStylesheet[size=" + css.length + "]";
+  }
+
+  /*
+   * Selects the supported encoding with the highest quality, as listed in the
+   * header, or matched by a wildcard:
+   */
+  private static String selectEncoding(String acceptEncoding) {
+    if(acceptEncoding == null) {
+      return "identity";
+    }
+
+    Map<String, Double> qualities = new HashMap<>();
+
+    for(String element : acceptEncoding.split(",")) {
+      String[] parts = element.split(";");
+      String coding = parts[0].strip().toLowerCase(Locale.ROOT);
+      double quality = 1;
+
+      for(int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].strip();
+
+        if(parameter.regionMatches(true, 0, "q=", 0, 2)) {
+          try {
+            quality = Double.parseDouble(parameter.substring(2).strip());
+          }
+          catch(NumberFormatException e) {
+            quality = 0;  // ignore malformed element
+          }
+        }
+      }
+
+      qualities.put(coding.equals("x-gzip") ? "gzip" : coding, quality);
+    }
+
+    String best = "identity";
+    double bestQuality = 0;
+
+    for(String encoding : PREFERRED_ENCODINGS) {
+      double quality = qualities.getOrDefault(encoding, qualities.getOrDefault("*", encoding.equals("identity") ? 0.001 : 0.0));
+
+      if(quality > bestQuality) {
+        best = encoding;
+        bestQuality = quality;
+      }
+    }
+
+    return best;
+  }
+
+  /*
+   * A gzip member and a zlib stream both wrap the same raw deflate data, so
+   * the zlib stream is derived from the gzip member without compressing again.
+   * The header written by GZIPOutputStream has no optional fields.
+   */
+  private byte[] toZlib(byte[] gzipped) {
+    if(gzipped.length < GZIP_HEADER_SIZE + GZIP_TRAILER_SIZE || gzipped[3] != 0) {
+      return compress(DeflaterOutputStream::new);  // unexpected header, compress again
+    }
+
+    int rawSize = gzipped.length - GZIP_HEADER_SIZE - GZIP_TRAILER_SIZE;
+    Adler32 adler32 = new Adler32();
+
+    adler32.update(css);
+
+    return ByteBuffer.allocate(2 + rawSize + 4)
+      .put((byte)0x78)  // deflate with a 32K window
+      .put((byte)0x9C)  // default compression level, and check bits
+      .put(gzipped, GZIP_HEADER_SIZE, rawSize)
+      .putInt((int)adler32.getValue())
+      .array();
+  }
+
+  private void grown() {
+    Runnable growthListener = this.growthListener;
+
+    if(growthListener != null) {
+      growthListener.run();
+    }
+  }
+
+  private interface CompressorFactory {
+    OutputStream create(OutputStream outputStream) throws IOException;
+  }
+
+  private byte[] compress(CompressorFactory factory) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(css.length / 4 + 64);
+
+    try(OutputStream os = factory.create(baos)) {
+      os.write(css);
+    }
+    catch(IOException e) {
+      throw new UncheckedIOException(e);  // not expected for in memory streams
+    }
+
+    return baos.toByteArray();
+  }
+}
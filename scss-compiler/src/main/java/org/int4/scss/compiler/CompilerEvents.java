@@ -0,0 +1,123 @@
+package org.int4.scss.compiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * JDK Flight Recorder events, showing where the time of a compilation goes.
+ * Events are created and begun unconditionally, which the JIT compiler
+ * eliminates when recording is disabled; their fields are only filled in when
+ * they are committed.
+ */
+final class CompilerEvents {
+  private static final String CATEGORY = "SCSS Compiler";
+
+  private CompilerEvents() {}
+
+  @Name("org.int4.scss.Installation")
+  @Label("Compiler Installation")
+  @Description("Extraction of the bundled Dart Sass compiler, or verification of an earlier extraction")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class InstallationEvent extends Event {
+    @Label("Platform")
+    String platform;
+
+    @Label("Directory")
+    String directory;
+
+    @Label("Extracted Bytes")
+    @DataAmount
+    long extractedBytes;
+
+    @Label("Outcome")
+    @Description("Whether an earlier extraction was reused, the compiler was extracted, or the installation failed")
+    String outcome;
+  }
+
+  @Name("org.int4.scss.ProcessStart")
+  @Label("Compiler Process Start")
+  @Description("Start of a Dart Sass compiler process")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class ProcessStartEvent extends Event {
+    @Label("Command")
+    String command;
+
+    @Label("Process Id")
+    long pid;
+
+    @Label("Outcome")
+    String outcome;
+  }
+
+  @Name("org.int4.scss.Response")
+  @Label("Compiler Response")
+  @Description("Exchange of a compile request and its response with a compiler process, from sending the request until the response was read from its standard output")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class ResponseEvent extends Event {
+    @Label("Entry")
+    String entry;
+
+    @Label("Request Bytes")
+    @DataAmount
+    long requestBytes;
+
+    @Label("Response Bytes")
+    @Description("Bytes read from the standard output of the process for the compilation, including log events and requests to importers and functions")
+    @DataAmount
+    long responseBytes;
+
+    @Label("Outcome")
+    String outcome;
+  }
+
+  @Name("org.int4.scss.Diagnostics")
+  @Label("Compiler Diagnostics")
+  @Description("Processing of the errors, warnings and deprecations of a compilation which reported any")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class DiagnosticsEvent extends Event {
+    @Label("Entry")
+    String entry;
+
+    @Label("Errors")
+    int errors;
+
+    @Label("Warnings")
+    int warnings;
+
+    @Label("Deprecations")
+    int deprecations;
+
+    @Label("Message Length")
+    @Description("Total length of the formatted messages, in characters")
+    long messageLength;
+  }
+
+  @Name("org.int4.scss.Compile")
+  @Label("Compilation")
+  @Description("A compilation requested from a compiler, including waiting for a process, cache lookups and sharing with other callers")
+  @Category(CATEGORY)
+  static final class CompileEvent extends Event {
+    @Label("Entry")
+    String entry;
+
+    @Label("Output Bytes")
+    @DataAmount
+    long outputBytes;
+
+    @Label("Loaded Files")
+    int loadedFiles;
+
+    @Label("Outcome")
+    @Description("Whether the compilation succeeded, failed because of an error in a stylesheet, or could not be completed")
+    String outcome;
+  }
+}
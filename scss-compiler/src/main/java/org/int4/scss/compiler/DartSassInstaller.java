@@ -0,0 +1,377 @@
+package org.int4.scss.compiler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.int4.scss.compiler.CompilerEvents.InstallationEvent;
+
+/*
+ * Extracts the Dart Sass compiler bundled for the current platform into a
+ * cache directory which is shared by all JVMs of the current user. The
+ * directory name includes the Dart Sass version and a checksum of the
+ * bundle, so a JVM only extracts the compiler when no other JVM did so
+ * before.
+ *
+ * Extraction happens in a temporary directory next to the final directory,
+ * which is renamed atomically when complete. A lock file guards against
+ * multiple JVMs extracting the same bundle at the same time.
+ */
+final class DartSassInstaller {
+  private static final Logger LOGGER = System.getLogger(DartSassInstaller.class.getName());
+  private static final String MANIFEST = ".manifest";
+
+  private static String version;  // guarded by DartSassInstaller.class
+
+  private DartSassInstaller() {}
+
+  /**
+   * Returns the version of the bundled Dart Sass compiler.
+   *
+   * @return a version string, or "unknown" if the version is not known, never {@code null}
+   */
+  static synchronized String version() {
+    if(version == null) {
+      try {
+        version = loadProperties().getProperty("version", "unknown");
+      }
+      catch(IOException e) {
+        LOGGER.log(Level.DEBUG, "Unable to determine version of Dart SCSS compiler", e);
+
+        version = "unknown";
+      }
+    }
+
+    return version;
+  }
+
+  /**
+   * Installs the Dart Sass compiler for the given platform, reusing an
+   * earlier installation if it is still intact.
+   *
+   * @param platform a platform string, like "linux-amd64", cannot be {@code null}
+   * @return the directory containing the compiler, never {@code null}
+   * @throws IOException when an IO error occurred
+   * @throws IllegalStateException when the platform is unsupported
+   */
+  static Path install(String platform) throws IOException {
+    InstallationEvent event = new InstallationEvent();
+    Path directory = null;
+
+    event.begin();
+
+    try {
+      directory = install(platform, event);
+
+      return directory;
+    }
+    finally {
+      if(event.shouldCommit()) {
+        event.platform = platform;
+        event.directory = directory == null ? null : directory.toString();
+        event.outcome = directory == null ? "failed" : event.extractedBytes == 0 ? "reused" : "extracted";
+        event.commit();
+      }
+    }
+  }
+
+  private static Path install(String platform, InstallationEvent event) throws IOException {
+    String resourceName = "/dart-sass-" + platform + ".zip";
+
+    if(SCSSCompiler.class.getResource(resourceName) == null) {
+      throw new IllegalStateException("Unsupported platform: " + platform);
+    }
+
+    Properties properties = loadProperties();
+    String version = properties.getProperty("version", "unknown");
+    String checksum = properties.getProperty(platform + ".sha256");
+
+    if(checksum == null) {
+      checksum = computeChecksum(resourceName);
+    }
+
+    String name = "dart-sass-" + version + "-" + platform + "-" + checksum.substring(0, Math.min(16, checksum.length()));
+
+    try {
+      return installInCache(cacheDirectory(), name, resourceName, event);
+    }
+    catch(IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to use cache directory for Dart SCSS compiler, extracting to a temporary directory instead", e);
+    }
+
+    Path tempDirectory = Files.createTempDirectory("org.int4.scss-");
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        deleteDirectoryRecursively(tempDirectory);
+      }
+      catch(IOException e) {
+        LOGGER.log(Level.WARNING, "Unable to delete temporary directory of Dart SCSS compiler: " + tempDirectory, e);
+      }
+    }));
+
+    event.extractedBytes = extract(resourceName, tempDirectory);
+
+    return tempDirectory;
+  }
+
+  private static Path installInCache(Path cacheDirectory, String name, String resourceName, InstallationEvent event) throws IOException {
+    Path target = cacheDirectory.resolve(name);
+
+    if(isIntact(target)) {
+      return target;
+    }
+
+    Files.createDirectories(cacheDirectory);
+
+    try(FileChannel channel = FileChannel.open(cacheDirectory.resolve(name + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      channel.lock();  // released when the channel is closed
+
+      if(isIntact(target)) {  // another JVM may have completed the extraction while waiting for the lock
+        return target;
+      }
+
+      if(Files.exists(target)) {
+        LOGGER.log(Level.WARNING, "Dart SCSS compiler in " + target + " is damaged, extracting it again");
+
+        deleteDirectoryRecursively(target);
+      }
+
+      // Left overs of extractions by JVMs which crashed while holding the lock:
+      try(Stream<Path> stream = Files.list(cacheDirectory)) {
+        for(Path path : stream.filter(p -> p.getFileName().toString().startsWith(name + ".tmp-")).toList()) {
+          deleteDirectoryRecursively(path);
+        }
+      }
+
+      Path temp = Files.createTempDirectory(cacheDirectory, name + ".tmp-");
+
+      try {
+        event.extractedBytes = extract(resourceName, temp);
+
+        try {
+          Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e) {
+          Files.move(temp, target);
+        }
+      }
+      catch(IOException | RuntimeException e) {
+        deleteDirectoryRecursively(temp);
+
+        throw e;
+      }
+    }
+
+    return target;
+  }
+
+  /*
+   * Checks the files listed in the manifest still exist with the expected
+   * sizes and SHA-256 digests, so a truncated or otherwise damaged file is
+   * detected even when its size did not change. Hashing the few megabytes of
+   * the compiler is still much cheaper than extracting it again. The manifest
+   * is written last, so an incomplete extraction never passes this check.
+   */
+  private static boolean isIntact(Path directory) {
+    Path manifest = directory.resolve(MANIFEST);
+
+    if(!Files.isRegularFile(manifest)) {
+      return false;
+    }
+
+    try(BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+      for(;;) {
+        String line = reader.readLine();
+
+        if(line == null) {
+          return true;
+        }
+
+        String[] fields = line.split("\t", 3);  // size, digest and path
+
+        if(fields.length != 3) {
+          return false;  // written by an older version, which did not record digests
+        }
+
+        Path file = directory.resolve(fields[2]);
+
+        if(!Files.isRegularFile(file) || Files.size(file) != Long.parseLong(fields[0]) || !computeDigest(file).equals(fields[1])) {
+          return false;
+        }
+
+        if(isExecutable(file) && !Files.isExecutable(file)) {
+          file.toFile().setExecutable(true);
+        }
+      }
+    }
+    catch(IOException | RuntimeException e) {
+      LOGGER.log(Level.DEBUG, "Unable to verify Dart SCSS compiler in " + directory, e);
+
+      return false;
+    }
+  }
+
+  /*
+   * Returns the number of bytes extracted:
+   */
+  private static long extract(String resourceName, Path target) throws IOException {
+    Path directory = target.toAbsolutePath().normalize();
+    List<String> manifest = new ArrayList<>();
+    long extractedBytes = 0;
+
+    try(
+      InputStream is = SCSSCompiler.class.getResourceAsStream(resourceName);
+      ZipInputStream zis = new ZipInputStream(is)
+    ) {
+      for(;;) {
+        ZipEntry entry = zis.getNextEntry();
+
+        if(entry == null) {
+          break;
+        }
+
+        Path entryPath = directory.resolve(entry.getName()).normalize();
+
+        if(!entryPath.startsWith(directory)) {
+          throw new IOException("Invalid entry in " + resourceName + ": " + entry.getName());
+        }
+
+        if(entry.isDirectory()) {
+          Files.createDirectories(entryPath); // Create the directory if entry is a folder
+        }
+        else {
+          Files.createDirectories(entryPath.getParent());
+
+          DigestInputStream dis = new DigestInputStream(zis, sha256());  // not closed, as that would close the zip stream
+          long size = Files.copy(dis, entryPath);
+
+          extractedBytes += size;
+
+          if(isExecutable(entryPath)) {
+            entryPath.toFile().setExecutable(true);
+          }
+
+          manifest.add(size + "\t" + HexFormat.of().formatHex(dis.getMessageDigest().digest()) + "\t" + directory.relativize(entryPath).toString().replace('\\', '/'));
+        }
+
+        zis.closeEntry();
+      }
+    }
+
+    Files.write(directory.resolve(MANIFEST), manifest, StandardCharsets.UTF_8);
+
+    return extractedBytes;
+  }
+
+  private static boolean isExecutable(Path path) {
+    String name = path.getFileName().toString();
+
+    return name.endsWith("sass") || name.endsWith("dart");
+  }
+
+  private static Properties loadProperties() throws IOException {
+    Properties properties = new Properties();
+
+    try(InputStream is = SCSSCompiler.class.getResourceAsStream("/dart-sass.properties")) {
+      if(is != null) {
+        properties.load(is);
+      }
+    }
+
+    return properties;
+  }
+
+  private static String computeChecksum(String resourceName) throws IOException {
+    return computeDigest(SCSSCompiler.class.getResourceAsStream(resourceName));
+  }
+
+  private static String computeDigest(Path file) throws IOException {
+    return computeDigest(Files.newInputStream(file));
+  }
+
+  /*
+   * Returns the SHA-256 digest of the given stream as a hexadecimal string,
+   * and closes the stream:
+   */
+  private static String computeDigest(InputStream inputStream) throws IOException {
+    try(DigestInputStream is = new DigestInputStream(inputStream, sha256())) {
+      is.transferTo(OutputStream.nullOutputStream());
+
+      return HexFormat.of().formatHex(is.getMessageDigest().digest());
+    }
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    }
+    catch(NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /*
+   * The directory can be configured with the "org.int4.scss.cache.dir" system
+   * property. By default the platform's conventional location for per user
+   * caches is used.
+   */
+  private static Path cacheDirectory() {
+    String configured = System.getProperty("org.int4.scss.cache.dir");
+
+    if(configured != null && !configured.isBlank()) {
+      return Path.of(configured);
+    }
+
+    String os = System.getProperty("os.name").toLowerCase();
+    Path home = Path.of(System.getProperty("user.home"));
+
+    if(os.contains("win")) {
+      String localAppData = System.getenv("LOCALAPPDATA");
+
+      return (localAppData == null ? home.resolve("AppData/Local") : Path.of(localAppData)).resolve("org.int4.scss");
+    }
+
+    if(os.contains("mac")) {
+      return home.resolve("Library/Caches/org.int4.scss");
+    }
+
+    String xdgCacheHome = System.getenv("XDG_CACHE_HOME");
+
+    return (xdgCacheHome == null || xdgCacheHome.isBlank() ? home.resolve(".cache") : Path.of(xdgCacheHome)).resolve("org.int4.scss");
+  }
+
+  private static void deleteDirectoryRecursively(Path directory) throws IOException {
+    try(Stream<Path> stream = Files.walk(directory)) {
+      for(Iterator<Path> iterator = stream.sorted(Comparator.reverseOrder()).iterator(); iterator.hasNext();) {
+        Files.delete(iterator.next());
+      }
+    }
+    catch(UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/*
+ * A data URI holding CSS as base64 encoded text. As the size of the URI is
+ * known in advance, it is encoded straight into a byte array of the exact size,
+ * holding one Latin-1 character per byte. A String is created from it with a
+ * single copy, and the URI can be used as a CharSequence, or appended to an
+ * Appendable, without creating a String at all.
+ */
+final class DataURI implements CharSequence {
+  private static final byte[] PREFIX = "data:text/css;charset=UTF-8;base64,".getBytes(StandardCharsets.ISO_8859_1);
+  private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.ISO_8859_1);
+  private static final int CHUNK_SIZE = 4096;
+
+  private final byte[] uri;
+
+  private DataURI(byte[] uri) {
+    this.uri = uri;
+  }
+
+  /**
+   * Creates a data URI holding the given CSS.
+   *
+   * @param css the CSS encoded as UTF-8, cannot be {@code null}
+   * @return a {@link DataURI}, never {@code null}
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  static DataURI of(byte[] css) {
+    Objects.requireNonNull(css, "css");
+
+    byte[] uri = new byte[Math.addExact(PREFIX.length, Math.multiplyExact((css.length + 2) / 3, 4))];
+
+    System.arraycopy(PREFIX, 0, uri, 0, PREFIX.length);
+
+    int d = PREFIX.length;
+    int fullGroupsEnd = css.length - css.length % 3;
+
+    for(int s = 0; s < fullGroupsEnd; s += 3) {
+      int bits = (css[s] & 0xff) << 16 | (css[s + 1] & 0xff) << 8 | (css[s + 2] & 0xff);
+
+      uri[d++] = ALPHABET[bits >>> 18];
+      uri[d++] = ALPHABET[(bits >>> 12) & 0x3f];
+      uri[d++] = ALPHABET[(bits >>> 6) & 0x3f];
+      uri[d++] = ALPHABET[bits & 0x3f];
+    }
+
+    if(fullGroupsEnd < css.length) {
+      int bits = (css[fullGroupsEnd] & 0xff) << 16 | (fullGroupsEnd + 1 < css.length ? (css[fullGroupsEnd + 1] & 0xff) << 8 : 0);
+
+      uri[d++] = ALPHABET[bits >>> 18];
+      uri[d++] = ALPHABET[(bits >>> 12) & 0x3f];
+      uri[d++] = fullGroupsEnd + 1 < css.length ? ALPHABET[(bits >>> 6) & 0x3f] : (byte)'=';
+      uri[d] = '=';
+    }
+
+    return new DataURI(uri);
+  }
+
+  /**
+   * Appends this URI to the given {@link Appendable}, in chunks, without
+   * creating a String holding the entire URI.
+   *
+   * @param appendable an {@link Appendable}, cannot be {@code null}
+   * @throws IOException when appending failed
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  void appendTo(Appendable appendable) throws IOException {
+    Objects.requireNonNull(appendable, "appendable");
+
+    if(appendable instanceof StringBuilder builder) {
+      builder.ensureCapacity(builder.length() + uri.length);
+    }
+
+    for(int start = 0; start < uri.length; start += CHUNK_SIZE) {
+      appendable.append(this, start, Math.min(uri.length, start + CHUNK_SIZE));
+    }
+  }
+
+  @Override
+  public int length() {
+    return uri.length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return (char)(uri[index] & 0xff);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    Objects.checkFromToIndex(start, end, uri.length);
+
+    return new String(uri, start, end - start, StandardCharsets.ISO_8859_1);
+  }
+
+  @Override
+  public String toString() {
+    return new String(uri, StandardCharsets.ISO_8859_1);
+  }
+}
@@ -0,0 +1,393 @@
+package org.int4.scss.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.int4.scss.compiler.EmbeddedProtocol.FileInput;
+import org.int4.scss.compiler.EmbeddedProtocol.LogEvent;
+import org.int4.scss.compiler.EmbeddedProtocol.LogEventType;
+import org.int4.scss.compiler.EmbeddedProtocol.StringInput;
+import org.int4.scss.compiler.SCSSCache.Dependency;
+import org.int4.scss.compiler.SCSSCache.Entry;
+import org.int4.scss.compiler.SCSSCache.Key;
+import org.int4.scss.compiler.SCSSCache.Result;
+
+/*
+ * Stores cache entries in a directory, so they survive restarts of the JVM.
+ * Only results of which all loaded stylesheets are files are cached, so the
+ * loaded URLs can be restored from the dependencies.
+ *
+ * Each entry consists of two files named after a hash of its key: a gzip
+ * compressed blob with the CSS, and an index with the dependencies and log
+ * events of the compilation. Both are written to a temporary file first and
+ * then moved in place, the index last, so an entry is only visible when it is
+ * complete. Entries which cannot be read are deleted.
+ *
+ * The modification time of an index records when the entry was last used,
+ * and is used to evict the least recently used entries when the directory
+ * exceeds its maximum size. The directory can be shared by multiple JVMs.
+ */
+final class DiskCache {
+  private static final Logger LOGGER = System.getLogger(DiskCache.class.getName());
+  private static final int MAGIC = 0x53435353;  // "SCSS"
+  private static final int FORMAT_VERSION = 1;
+  private static final String INDEX_SUFFIX = ".idx";
+  private static final String BLOB_SUFFIX = ".css.gz";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+  private final Path directory;
+  private final long maxBytes;
+
+  private long bytes = -1;  // guarded by this, -1 when not yet determined
+
+  DiskCache(Path directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the name under which the given key is stored. Only keys which are
+   * the same across JVMs can be stored, which excludes keys of requests with
+   * importers.
+   *
+   * @param key a {@link Key}, cannot be {@code null}
+   * @return a name, or {@code null} if the key cannot be stored
+   */
+  static String nameOf(Key key) {
+    if(!key.request().importers().isEmpty() || !key.request().functions().isEmpty()) {
+      return null;
+    }
+
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+      update(digest, String.valueOf(FORMAT_VERSION));
+      update(digest, key.compilerVersion());
+
+      switch(key.request().input()) {
+        case FileInput fileInput -> update(digest, "file", fileInput.path().toAbsolutePath().toString());
+        case StringInput stringInput -> update(digest, "string", stringInput.syntax().name(), String.valueOf(stringInput.baseDirectory()), stringInput.source());
+      }
+
+      for(Path loadPath : key.request().loadPaths()) {
+        update(digest, loadPath.toAbsolutePath().toString());
+      }
+
+      return HexFormat.of().formatHex(digest.digest());
+    }
+    catch(NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Reads the entry with the given name.
+   *
+   * @param name a name, cannot be {@code null}
+   * @return an {@link Entry}, or {@code null} if there was no readable entry
+   */
+  Entry read(String name) {
+    Path index = directory.resolve(name + INDEX_SUFFIX);
+    Path blob = directory.resolve(name + BLOB_SUFFIX);
+
+    try {
+      Entry entry;
+      long blobSize;
+      List<Dependency> dependencies = new ArrayList<>();
+      List<LogEvent> logEvents = new ArrayList<>();
+
+      try(DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+        if(is.readInt() != MAGIC || is.readInt() != FORMAT_VERSION) {
+          throw new IOException("Unsupported format");
+        }
+
+        blobSize = is.readLong();
+
+        for(int i = is.readInt(); i > 0; i--) {
+          Path path = Path.of(readString(is));
+          long lastModified = is.readLong();
+          long size = is.readLong();
+          byte[] hash = is.readNBytes(is.readUnsignedByte());
+
+          if(hash.length == 0) {
+            throw new IOException("Unexpected end of index");
+          }
+
+          dependencies.add(new Dependency(path, lastModified, size, hash));
+        }
+
+        for(int i = is.readInt(); i > 0; i--) {
+          LogEventType type = LogEventType.values()[is.readUnsignedByte()];
+
+          logEvents.add(new LogEvent(type, readString(is), readString(is)));
+        }
+      }
+
+      if(Files.size(blob) != blobSize) {
+        throw new IOException("Blob has unexpected size");
+      }
+
+      if(!Dependency.areCurrent(dependencies)) {
+        return null;
+      }
+
+      byte[] gzipped = Files.readAllBytes(blob);
+
+      try(InputStream is = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+        CompiledStylesheet stylesheet = new CompiledStylesheet(is.readAllBytes(), gzipped);  // keeps the compressed blob for serving
+        List<String> loadedUrls = dependencies.stream().map(dependency -> dependency.path.toUri().toString()).toList();
+
+        entry = new Entry(new Result(stylesheet, logEvents, loadedUrls), dependencies);
+      }
+
+      Files.setLastModifiedTime(index, FileTime.fromMillis(System.currentTimeMillis()));
+
+      return entry;
+    }
+    catch(NoSuchFileException e) {
+      return null;
+    }
+    catch(IOException | RuntimeException e) {
+      LOGGER.log(Level.DEBUG, "Deleting unreadable cache entry: " + name, e);
+
+      delete(name);
+
+      return null;
+    }
+  }
+
+  /**
+   * Writes an entry under the given name, replacing any existing entry.
+   *
+   * @param name a name, cannot be {@code null}
+   * @param entry an {@link Entry}, cannot be {@code null}
+   */
+  void write(String name, Entry entry) {
+    try {
+      Files.createDirectories(directory);
+
+      Path blob = writeAtomically(name + BLOB_SUFFIX, os -> os.write(entry.result.stylesheet().gzippedBytes()));
+
+      long blobSize = Files.size(blob);
+
+      Path index = writeAtomically(name + INDEX_SUFFIX, os -> {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os));
+
+        dos.writeInt(MAGIC);
+        dos.writeInt(FORMAT_VERSION);
+        dos.writeLong(blobSize);
+        dos.writeInt(entry.dependencies.size());
+
+        for(Dependency dependency : entry.dependencies) {
+          writeString(dos, dependency.path.toString());
+          dos.writeLong(dependency.lastModified);
+          dos.writeLong(dependency.size);
+          dos.writeByte(dependency.hash.length);
+          dos.write(dependency.hash);
+        }
+
+        dos.writeInt(entry.result.logEvents().size());
+
+        for(LogEvent event : entry.result.logEvents()) {
+          dos.writeByte(event.type().ordinal());
+          writeString(dos, event.message());
+          writeString(dos, event.formatted());
+        }
+
+        dos.flush();
+      });
+
+      added(blobSize + Files.size(index));
+    }
+    catch(IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to write cache entry to " + directory, e);
+    }
+  }
+
+  /**
+   * Deletes all entries.
+   */
+  synchronized void clear() {
+    try(Stream<Path> stream = list()) {
+      for(Path path : stream.toList()) {
+        Files.deleteIfExists(path);
+      }
+    }
+    catch(IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to clear cache directory " + directory, e);
+    }
+
+    bytes = -1;
+  }
+
+  private synchronized void added(long size) throws IOException {
+    if(bytes < 0 || bytes + size > maxBytes) {
+      bytes = evict();  // also determines the size when not yet known
+    }
+    else {
+      bytes += size;
+    }
+  }
+
+  /*
+   * Scans the directory, deleting left over temporary files and the least
+   * recently used entries until the directory is within its maximum size.
+   */
+  private long evict() throws IOException {
+    Map<String, Long> sizes = new HashMap<>();
+    Map<String, Long> lastUsed = new HashMap<>();
+    long total = 0;
+    long now = System.currentTimeMillis();
+
+    try(Stream<Path> stream = list()) {
+      for(Path path : stream.toList()) {
+        String fileName = path.getFileName().toString();
+
+        try {
+          long lastModified = Files.getLastModifiedTime(path).toMillis();
+          long size = Files.size(path);
+
+          if(fileName.endsWith(TEMP_SUFFIX)) {
+            if(now - lastModified > STALE_TEMP_MILLIS) {
+              Files.deleteIfExists(path);
+            }
+
+            continue;
+          }
+
+          String name = fileName.substring(0, fileName.indexOf('.'));
+
+          sizes.merge(name, size, Long::sum);
+          total += size;
+
+          if(fileName.endsWith(INDEX_SUFFIX)) {
+            lastUsed.put(name, lastModified);
+          }
+        }
+        catch(NoSuchFileException e) {
+          // deleted concurrently, ignore
+        }
+      }
+    }
+
+    if(total <= maxBytes) {
+      return total;
+    }
+
+    List<String> names = new ArrayList<>(sizes.keySet());
+
+    // Entries without an index are incomplete, and are deleted first:
+    names.sort(Comparator.comparing(name -> lastUsed.getOrDefault(name, Long.MIN_VALUE)));
+
+    for(String name : names) {
+      if(total <= maxBytes) {
+        break;
+      }
+
+      delete(name);
+      total -= sizes.get(name);
+    }
+
+    return total;
+  }
+
+  private void delete(String name) {
+    try {
+      Files.deleteIfExists(directory.resolve(name + INDEX_SUFFIX));  // index first, so a partial entry is never visible
+      Files.deleteIfExists(directory.resolve(name + BLOB_SUFFIX));
+    }
+    catch(IOException e) {
+      LOGGER.log(Level.DEBUG, "Unable to delete cache entry: " + name, e);
+    }
+  }
+
+  private Stream<Path> list() throws IOException {
+    if(!Files.isDirectory(directory)) {
+      return Stream.empty();
+    }
+
+    return Files.list(directory).filter(path -> {
+      String fileName = path.getFileName().toString();
+
+      return fileName.endsWith(INDEX_SUFFIX) || fileName.endsWith(BLOB_SUFFIX) || fileName.endsWith(TEMP_SUFFIX);
+    });
+  }
+
+  private Path writeAtomically(String fileName, Writer writer) throws IOException {
+    Path target = directory.resolve(fileName);
+    Path temp = Files.createTempFile(directory, fileName + ".", TEMP_SUFFIX);
+
+    try {
+      try(OutputStream os = Files.newOutputStream(temp)) {
+        writer.write(os);
+      }
+
+      try {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch(AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+
+      return target;
+    }
+    finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static void update(MessageDigest digest, String... values) {
+    for(String value : values) {
+      digest.update(value.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte)0);
+    }
+  }
+
+  private static void writeString(DataOutputStream dos, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+    dos.writeInt(bytes.length);
+    dos.write(bytes);
+  }
+
+  private static String readString(DataInputStream dis) throws IOException {
+    int length = dis.readInt();
+    byte[] bytes = dis.readNBytes(length);
+
+    if(bytes.length != length) {
+      throw new IOException("Unexpected end of index");
+    }
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private interface Writer {
+    void write(OutputStream outputStream) throws IOException;
+  }
+}
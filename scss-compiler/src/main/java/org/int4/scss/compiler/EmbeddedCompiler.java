@@ -0,0 +1,519 @@
+package org.int4.scss.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.int4.scss.compiler.CompilerEvents.ResponseEvent;
+import org.int4.scss.compiler.EmbeddedProtocol.CanonicalizeRequest;
+import org.int4.scss.compiler.EmbeddedProtocol.CompileRequest;
+import org.int4.scss.compiler.EmbeddedProtocol.CompileResponse;
+import org.int4.scss.compiler.EmbeddedProtocol.FunctionCallRequest;
+import org.int4.scss.compiler.EmbeddedProtocol.HostFunction;
+import org.int4.scss.compiler.EmbeddedProtocol.ImportRequest;
+import org.int4.scss.compiler.EmbeddedProtocol.LogEvent;
+import org.int4.scss.compiler.EmbeddedProtocol.Packet;
+import org.int4.scss.compiler.EmbeddedProtocol.ProtocolError;
+
+/*
+ * Keeps a Dart Sass compiler running in embedded mode and sends it compile
+ * requests over its standard input and output. Many compilations can be in
+ * flight at the same time; a reader running on the executor routes the
+ * responses back to the waiting callers using their compilation ids.
+ * Requests of the compiler to canonicalize or load imports, or to call a host
+ * function, are handled by the importers and functions of the compilation,
+ * also on the executor, so a slow importer or function does not hold up the
+ * reader.
+ *
+ * The process is started on first use, and restarted when it exits or
+ * misbehaves.
+ *
+ * The protocol has no way to cancel a single compilation. When a caller stops
+ * waiting for a compilation, because it timed out or was interrupted, the
+ * process is destroyed, as it could otherwise stay busy indefinitely. Other
+ * compilations in flight on the same process are then retried on a new
+ * process.
+ */
+class EmbeddedCompiler implements AutoCloseable {
+  private static final Logger LOGGER = System.getLogger(EmbeddedCompiler.class.getName());
+  private static final int MAX_ATTEMPTS = 3;
+
+  interface ProcessFactory {
+    Process start() throws IOException;
+  }
+
+  /*
+   * Observes a single compilation. The first output is reported on the reader
+   * of the connection, the CPU time on the compiling thread.
+   */
+  interface Probe {
+    void firstByte();
+    void cpuTime(Duration cpuTime);
+  }
+
+  record Result(CompileResponse response, List<LogEvent> logEvents) {}
+
+  private final ProcessFactory processFactory;
+  private final Executor executor;
+
+  /*
+   * A lock rather than synchronized, as starting a process can block on the
+   * installation of the compiler, which would pin a virtual thread:
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private Connection connection;  // guarded by lock
+  private boolean closed;  // guarded by lock
+
+  EmbeddedCompiler(ProcessFactory processFactory, Executor executor) {
+    this.processFactory = Objects.requireNonNull(processFactory, "processFactory");
+    this.executor = Objects.requireNonNull(executor, "executor");
+  }
+
+  /**
+   * Starts the compiler process if it is not running yet.
+   *
+   * @throws IOException when the process could not be started
+   */
+  void start() throws IOException {
+    connection();
+  }
+
+  /**
+   * Compiles the given request, blocking until the compiler responds or the
+   * given timeout expires. This method can be called by multiple threads
+   * concurrently.
+   *
+   * <p>
+   * When the timeout expires, or the calling thread is interrupted, the
+   * compiler process is destroyed, and any other compilations in flight on it
+   * are retried on a new process.
+   *
+   * @param request a {@link CompileRequest}, cannot be {@code null}
+   * @param timeout a {@link Duration}, or {@code null} to wait indefinitely
+   * @param probe a {@link Probe} observing the compilation, or {@code null} if none
+   * @return a {@link Result}, never {@code null}
+   * @throws IOException when communicating with the compiler failed, or the timeout expired
+   */
+  Result compile(CompileRequest request, Duration timeout, Probe probe) throws IOException {
+    long deadline = timeout == null ? 0 : System.nanoTime() + timeout.toNanos();
+
+    for(int attempt = 1;; attempt++) {
+      try {
+        return connection().compile(request, timeout, deadline, probe);
+      }
+      catch(RestartException e) {
+        if(attempt == MAX_ATTEMPTS) {
+          throw new IOException("Dart SCSS compiler was restarted too often while compiling: " + request.input(), e);
+        }
+
+        LOGGER.log(Level.DEBUG, "Retrying compilation of " + request.input() + " after restart of Dart SCSS compiler", e);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    Connection connection;
+
+    lock.lock();
+
+    try {
+      closed = true;
+      connection = this.connection;
+      this.connection = null;
+    }
+    finally {
+      lock.unlock();
+    }
+
+    if(connection != null) {
+      connection.destroy(new IOException("Compiler was closed"));
+    }
+  }
+
+  private Connection connection() throws IOException {
+    lock.lock();
+
+    try {
+      if(closed) {
+        throw new IllegalStateException("Compiler was closed");
+      }
+
+      if(connection == null || !connection.isAlive()) {
+        connection = new Connection(processFactory.start());
+      }
+
+      return connection;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /*
+   * A single running compiler process, and the compilations in flight on it.
+   */
+  private final class Connection {
+    private final Process process;
+    private final OutputStream stdin;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Map<Integer, Compilation> compilations = new ConcurrentHashMap<>();
+
+    private int lastCompilationId;  // guarded by writeLock
+    private volatile IOException failure;
+
+    Connection(Process process) {
+      this.process = process;
+      this.stdin = new BufferedOutputStream(process.getOutputStream());
+
+      InputStream stdout = new BufferedInputStream(process.getInputStream());
+
+      executor.execute(() -> readPackets(stdout));
+      executor.execute(this::logErrors);
+    }
+
+    boolean isAlive() {
+      return failure == null && process.isAlive();
+    }
+
+    /*
+     * Compiles the request, waiting until the deadline, or indefinitely when
+     * there is no timeout:
+     */
+    Result compile(CompileRequest request, Duration timeout, long deadline, Probe probe) throws IOException {
+      ResponseEvent event = new ResponseEvent();
+      Compilation compilation = new Compilation(request, probe);
+      long startCpuNanos = probe == null ? -1 : cpuNanos();
+      int id;
+      int requestBytes;
+
+      event.begin();
+      writeLock.lock();
+
+      try {
+        if(failure != null) {
+          throw new IOException("Dart SCSS compiler is no longer running", failure);
+        }
+
+        ProtobufWriter message = EmbeddedProtocol.compileRequest(request);
+
+        id = nextCompilationId();
+        requestBytes = message.size();
+        compilations.put(id, compilation);
+
+        EmbeddedProtocol.writePacket(stdin, id, message);
+        stdin.flush();
+      }
+      catch(IOException e) {
+        destroy(e);
+
+        throw e;
+      }
+      finally {
+        writeLock.unlock();
+      }
+
+      String outcome = "error";
+
+      try {
+        Result result = timeout == null ? compilation.future.get() : compilation.future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+        outcome = result.response().isSuccess() ? "succeeded" : "failed";
+
+        if(probe != null && startCpuNanos >= 0) {
+          long endCpuNanos = cpuNanos();
+
+          if(endCpuNanos >= startCpuNanos) {
+            probe.cpuTime(Duration.ofNanos(endCpuNanos - startCpuNanos));
+          }
+        }
+
+        return result;
+      }
+      catch(InterruptedException e) {
+        outcome = "interrupted";
+        abandon(id, request);
+        Thread.currentThread().interrupt();
+
+        throw new InterruptedIOException("Interrupted while compiling: " + request.input());
+      }
+      catch(TimeoutException e) {
+        outcome = "timed out";
+        abandon(id, request);
+
+        throw new IOException("Timed out after " + timeout + " compiling: " + request.input());
+      }
+      catch(ExecutionException e) {
+        if(e.getCause() instanceof RestartException re) {
+          outcome = "restarted";
+
+          throw re;
+        }
+
+        throw new IOException("Dart SCSS compiler failed while compiling: " + request.input(), e.getCause());
+      }
+      finally {
+        if(event.shouldCommit()) {
+          event.entry = request.input().toString();
+          event.requestBytes = requestBytes;
+          event.responseBytes = compilation.responseBytes;
+          event.outcome = outcome;
+          event.commit();
+        }
+      }
+    }
+
+    /*
+     * Stops waiting for a compilation. Unless it completed in the mean time,
+     * the process is destroyed, as the compilation can't be cancelled any other
+     * way.
+     */
+    private void abandon(int id, CompileRequest request) {
+      if(compilations.remove(id) != null) {
+        destroy(new RestartException("Dart SCSS compiler was restarted, as the compilation of " + request.input() + " was abandoned"));
+      }
+    }
+
+    void destroy(IOException cause) {
+      if(failure == null) {
+        failure = cause;
+      }
+
+      try {
+        stdin.close();  // an embedded compiler exits when its input is closed
+      }
+      catch(IOException e) {
+        // ignore, process is destroyed below
+      }
+
+      ProcessReaper.destroy(process);
+
+      for(Integer id : List.copyOf(compilations.keySet())) {
+        Compilation compilation = compilations.remove(id);
+
+        if(compilation != null) {
+          compilation.future.completeExceptionally(cause);
+        }
+      }
+    }
+
+    /*
+     * Returns the CPU time used by the process so far, or -1 when the platform
+     * does not report it:
+     */
+    private long cpuNanos() {
+      return process.info().totalCpuDuration().map(Duration::toNanos).orElse(-1L);
+    }
+
+    private int nextCompilationId() {
+      lastCompilationId = lastCompilationId == Integer.MAX_VALUE ? 1 : lastCompilationId + 1;
+
+      return lastCompilationId;
+    }
+
+    private void readPackets(InputStream stdout) {
+      try(stdout) {
+        for(;;) {
+          Packet packet = EmbeddedProtocol.readPacket(stdout);
+
+          if(packet == null) {
+            throw new EOFException("Dart SCSS compiler exited unexpectedly");
+          }
+
+          if(packet.message() instanceof ProtocolError error) {
+            throw new IOException("Dart SCSS compiler reported a protocol error: " + error.message());
+          }
+
+          Compilation compilation = compilations.get(packet.compilationId());
+
+          if(compilation == null) {
+            LOGGER.log(Level.DEBUG, "Ignoring message for unknown compilation from Dart SCSS compiler: " + packet);
+
+            continue;
+          }
+
+          if(compilation.responseBytes == 0 && compilation.probe != null) {
+            compilation.probe.firstByte();
+          }
+
+          compilation.responseBytes += packet.size();
+
+          switch(packet.message()) {
+            case LogEvent event -> compilation.logEvents.add(event);
+            case CanonicalizeRequest canonicalizeRequest -> executor.execute(() -> canonicalize(packet.compilationId(), compilation, canonicalizeRequest));
+            case ImportRequest importRequest -> executor.execute(() -> load(packet.compilationId(), compilation, importRequest));
+            case FunctionCallRequest functionCallRequest -> executor.execute(() -> call(packet.compilationId(), compilation, functionCallRequest));
+            case CompileResponse response -> {
+              compilations.remove(packet.compilationId());
+              compilation.future.complete(new Result(response, List.copyOf(compilation.logEvents)));
+            }
+            default -> LOGGER.log(Level.DEBUG, "Ignoring unexpected message from Dart SCSS compiler: " + packet);
+          }
+        }
+      }
+      catch(IOException e) {
+        destroy(e);
+      }
+    }
+
+    private void canonicalize(int compilationId, Compilation compilation, CanonicalizeRequest request) {
+      ProtobufWriter response;
+
+      try {
+        URI url = compilation.importer(request.importerId()).canonicalize(request.url(), request.fromImport());
+
+        response = EmbeddedProtocol.canonicalizeResponse(request.id(), url == null ? null : url.toString(), null);
+      }
+      catch(IOException | RuntimeException e) {
+        response = EmbeddedProtocol.canonicalizeResponse(request.id(), null, describe(e));
+      }
+
+      send(compilationId, response);
+    }
+
+    private void load(int compilationId, Compilation compilation, ImportRequest request) {
+      ProtobufWriter response;
+
+      try {
+        Importer.Stylesheet stylesheet = compilation.importer(request.importerId()).load(URI.create(request.url()));
+
+        response = EmbeddedProtocol.importResponse(request.id(), stylesheet, null);
+      }
+      catch(IOException | RuntimeException e) {
+        response = EmbeddedProtocol.importResponse(request.id(), null, describe(e));
+      }
+
+      send(compilationId, response);
+    }
+
+    private void call(int compilationId, Compilation compilation, FunctionCallRequest request) {
+      ProtobufWriter response;
+
+      try {
+        List<SassValue> arguments = new ArrayList<>();
+
+        for(ProtobufReader argument : request.arguments()) {
+          arguments.add(SassValueCodec.decode(argument));
+        }
+
+        SassValue result = compilation.function(request.name()).implementation().apply(List.copyOf(arguments));
+
+        response = EmbeddedProtocol.functionCallResponse(request.id(), Objects.requireNonNull(result, "result"), null);
+      }
+      catch(IOException | RuntimeException e) {
+        response = EmbeddedProtocol.functionCallResponse(request.id(), null, describe(e));
+      }
+
+      send(compilationId, response);
+    }
+
+    private void send(int compilationId, ProtobufWriter message) {
+      writeLock.lock();
+
+      try {
+        if(failure == null) {
+          EmbeddedProtocol.writePacket(stdin, compilationId, message);
+          stdin.flush();
+        }
+      }
+      catch(IOException e) {
+        destroy(e);
+      }
+      finally {
+        writeLock.unlock();
+      }
+    }
+
+    private void logErrors() {
+      try(BufferedReader reader = process.errorReader(StandardCharsets.UTF_8)) {
+        for(;;) {
+          String line = reader.readLine();
+
+          if(line == null) {
+            break;
+          }
+
+          LOGGER.log(Level.WARNING, line);
+        }
+      }
+      catch(IOException e) {
+        LOGGER.log(Level.DEBUG, "Error reading standard error of Dart SCSS compiler", e);
+      }
+    }
+  }
+
+  /*
+   * Signals a compilation failed because the process was destroyed on behalf
+   * of another compilation, and so can be retried.
+   */
+  private static final class RestartException extends IOException {
+    RestartException(String message) {
+      super(message);
+    }
+  }
+
+  private static String describe(Exception e) {
+    return e.getMessage() == null ? e.toString() : e.getMessage();
+  }
+
+  /*
+   * State of a single compilation in flight. Log events are only accessed by
+   * the reader of the connection, which is also the only writer of the number
+   * of response bytes.
+   */
+  private static final class Compilation {
+    final CompileRequest request;
+    final Probe probe;
+    final CompletableFuture<Result> future = new CompletableFuture<>();
+    final List<LogEvent> logEvents = new ArrayList<>();
+
+    volatile long responseBytes;
+
+    Compilation(CompileRequest request, Probe probe) {
+      this.request = request;
+      this.probe = probe;
+    }
+
+    Importer importer(int id) throws IOException {
+      if(id < 0 || id >= request.importers().size()) {
+        throw new IOException("Unknown importer: " + id);
+      }
+
+      return request.importers().get(id);
+    }
+
+    HostFunction function(String name) throws IOException {
+      if(name != null) {
+        for(HostFunction function : request.functions()) {
+          if(function.name().replace('_', '-').equals(name.replace('_', '-'))) {
+            return function;
+          }
+        }
+      }
+
+      throw new IOException("Unknown function: " + name);
+    }
+  }
+}
@@ -0,0 +1,521 @@
+package org.int4.scss.compiler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/*
+ * Encodes and decodes the messages of the Dart Sass embedded protocol. Each
+ * packet on the wire consists of a varint length, followed by a varint
+ * compilation id and a protocol buffer encoded message.
+ *
+ * See https://github.com/sass/sass/blob/main/spec/embedded-protocol.md
+ */
+final class EmbeddedProtocol {
+  private static final int MAX_PACKET_SIZE = Integer.MAX_VALUE - 8;
+  private static final byte[] EMPTY_CSS = new byte[0];
+
+  enum LogEventType { WARNING, DEPRECATION_WARNING, DEBUG }
+
+  sealed interface Input {}
+
+  record FileInput(Path path) implements Input {
+    FileInput {
+      Objects.requireNonNull(path, "path");
+    }
+
+    @Override
+    public String toString() {
+      return path.toString();
+    }
+  }
+
+  /*
+   * Relative imports in the source are resolved against the base directory,
+   * when it is not null.
+   */
+  record StringInput(String source, Syntax syntax, Path baseDirectory) implements Input {
+    StringInput {
+      Objects.requireNonNull(source, "source");
+      Objects.requireNonNull(syntax, "syntax");
+    }
+
+    @Override
+    public String toString() {
+      return "<" + syntax.toString().toLowerCase() + " source>";
+    }
+  }
+
+  /*
+   * A function implemented by the host, declared with a Sass signature like
+   * "brand-color($name, $shade: 500)".
+   */
+  record HostFunction(String signature, Function<List<SassValue>, SassValue> implementation) {
+    HostFunction {
+      Objects.requireNonNull(signature, "signature");
+      Objects.requireNonNull(implementation, "implementation");
+
+      if(signature.indexOf('(') <= 0 || !signature.endsWith(")")) {
+        throw new IllegalArgumentException("Invalid function signature: " + signature);
+      }
+    }
+
+    String name() {
+      return signature.substring(0, signature.indexOf('(')).strip();
+    }
+  }
+
+  /*
+   * Custom importers are identified by their index in the importers list, and
+   * are tried before the load paths.
+   */
+  record CompileRequest(Input input, List<Importer> importers, List<Path> loadPaths, List<HostFunction> functions) {
+    CompileRequest {
+      Objects.requireNonNull(input, "input");
+      importers = List.copyOf(importers);
+      loadPaths = List.copyOf(loadPaths);
+      functions = List.copyOf(functions);
+    }
+  }
+
+  sealed interface OutboundMessage {}
+
+  record ProtocolError(int type, int id, String message) implements OutboundMessage {}
+
+  /*
+   * The CSS is kept encoded as UTF-8, as it was received, and is terminated
+   * with a newline unless empty.
+   */
+  record CompileResponse(byte[] css, String failure, List<String> loadedUrls) implements OutboundMessage {
+    boolean isSuccess() {
+      return failure == null;
+    }
+  }
+
+  record LogEvent(LogEventType type, String message, String formatted) implements OutboundMessage {}
+
+  record CanonicalizeRequest(int id, int importerId, String url, boolean fromImport) implements OutboundMessage {}
+
+  record ImportRequest(int id, int importerId, String url) implements OutboundMessage {}
+
+  /*
+   * Arguments are decoded by the caller, so a value which cannot be decoded
+   * only fails the function call.
+   */
+  record FunctionCallRequest(int id, String name, int functionId, List<ProtobufReader> arguments) implements OutboundMessage {}
+
+  record VersionResponse(int id, String protocolVersion, String compilerVersion, String implementationVersion, String implementationName) implements OutboundMessage {}
+
+  record UnsupportedMessage(int field) implements OutboundMessage {}
+
+  record Packet(int compilationId, OutboundMessage message, int size) {}
+
+  private EmbeddedProtocol() {}
+
+  static ProtobufWriter versionRequest(int id) {
+    return new ProtobufWriter().writeMessage(7, new ProtobufWriter().writeUInt(1, id));
+  }
+
+  static ProtobufWriter compileRequest(CompileRequest request) {
+    ProtobufWriter writer = new ProtobufWriter();
+
+    switch(request.input()) {
+      case FileInput fileInput -> writer.writeString(3, fileInput.path().toString());
+      case StringInput stringInput -> {
+        ProtobufWriter input = new ProtobufWriter()
+          .writeString(1, stringInput.source())
+          .writeUInt(3, stringInput.syntax().ordinal());
+
+        if(stringInput.baseDirectory() != null) {
+          input.writeMessage(4, new ProtobufWriter().writeString(1, stringInput.baseDirectory().toString()));
+        }
+
+        writer.writeMessage(2, input);
+      }
+    }
+
+    writer
+      .writeUInt(4, 1)  // OutputStyle.COMPRESSED
+      .writeBool(5, false);  // no source map
+
+    for(int i = 0; i < request.importers().size(); i++) {
+      writer.writeMessage(6, new ProtobufWriter().writeUInt(2, i));
+    }
+
+    for(Path loadPath : request.loadPaths()) {
+      writer.writeMessage(6, new ProtobufWriter().writeString(1, loadPath.toString()));
+    }
+
+    for(HostFunction function : request.functions()) {
+      writer.writeString(7, function.signature());
+    }
+
+    writer
+      .writeBool(8, false)  // no colors in formatted messages
+      .writeBool(9, false)  // allow unicode in formatted messages
+      .writeBool(13, true);  // emit @charset or BOM like the command line compiler
+
+    return new ProtobufWriter().writeMessage(2, writer);
+  }
+
+  /**
+   * Creates a response to a {@link CanonicalizeRequest}. When neither a URL nor
+   * an error is given, the response indicates the importer did not recognize the
+   * URL.
+   *
+   * @param id the id of the request
+   * @param url a canonical URL, can be {@code null}
+   * @param error an error message, can be {@code null}
+   * @return a {@link ProtobufWriter} containing the message, never {@code null}
+   */
+  static ProtobufWriter canonicalizeResponse(int id, String url, String error) {
+    ProtobufWriter writer = new ProtobufWriter().writeUInt(1, id);
+
+    if(url != null) {
+      writer.writeString(2, url);
+    }
+
+    if(error != null) {
+      writer.writeString(3, error);
+    }
+
+    return new ProtobufWriter().writeMessage(3, writer);
+  }
+
+  /**
+   * Creates a response to an {@link ImportRequest}. When neither a stylesheet
+   * nor an error is given, the response indicates the stylesheet was not found.
+   *
+   * @param id the id of the request
+   * @param stylesheet an {@link Importer.Stylesheet}, can be {@code null}
+   * @param error an error message, can be {@code null}
+   * @return a {@link ProtobufWriter} containing the message, never {@code null}
+   */
+  static ProtobufWriter importResponse(int id, Importer.Stylesheet stylesheet, String error) {
+    ProtobufWriter writer = new ProtobufWriter().writeUInt(1, id);
+
+    if(stylesheet != null) {
+      writer.writeMessage(2, new ProtobufWriter()
+        .writeString(1, stylesheet.contents())
+        .writeUInt(2, stylesheet.syntax().ordinal())
+      );
+    }
+
+    if(error != null) {
+      writer.writeString(3, error);
+    }
+
+    return new ProtobufWriter().writeMessage(4, writer);
+  }
+
+  /**
+   * Creates a response to a {@link FunctionCallRequest}, containing either a
+   * result or an error.
+   *
+   * @param id the id of the request
+   * @param result the resulting {@link SassValue}, can be {@code null} when an error is given
+   * @param error an error message, can be {@code null} when a result is given
+   * @return a {@link ProtobufWriter} containing the message, never {@code null}
+   */
+  static ProtobufWriter functionCallResponse(int id, SassValue result, String error) {
+    ProtobufWriter writer = new ProtobufWriter().writeUInt(1, id);
+
+    if(result != null) {
+      writer.writeMessage(2, SassValueCodec.encode(result));
+    }
+
+    if(error != null) {
+      writer.writeString(3, error);
+    }
+
+    return new ProtobufWriter().writeMessage(6, writer);
+  }
+
+  static void writePacket(OutputStream outputStream, int compilationId, ProtobufWriter message) throws IOException {
+    ProtobufWriter header = new ProtobufWriter();
+    ProtobufWriter id = new ProtobufWriter();
+
+    id.writeVarint(Integer.toUnsignedLong(compilationId));
+    header.writeVarint(id.size() + message.size());
+
+    header.writeTo(outputStream);
+    id.writeTo(outputStream);
+    message.writeTo(outputStream);
+  }
+
+  /**
+   * Reads the next packet from the given stream.
+   *
+   * @param inputStream an {@link InputStream}, cannot be {@code null}
+   * @return a {@link Packet}, or {@code null} if the end of the stream was reached
+   * @throws IOException when an IO error occurred or the packet was malformed
+   */
+  static Packet readPacket(InputStream inputStream) throws IOException {
+    long length = readVarint(inputStream);
+
+    if(length == -1) {
+      return null;
+    }
+
+    if(length > MAX_PACKET_SIZE) {
+      throw new IOException("Packet too large: " + length);
+    }
+
+    byte[] data = inputStream.readNBytes((int)length);
+
+    if(data.length != length) {
+      throw new EOFException("Unexpected end of stream while reading packet of length " + length);
+    }
+
+    ProtobufReader reader = new ProtobufReader(data);
+
+    return new Packet(reader.readUInt32(), readOutboundMessage(reader), data.length);
+  }
+
+  private static OutboundMessage readOutboundMessage(ProtobufReader reader) throws IOException {
+    OutboundMessage message = null;
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      message = switch(tag >>> 3) {
+        case 1 -> readProtocolError(reader.readMessage());
+        case 2 -> readCompileResponse(reader.readMessage());
+        case 4 -> readLogEvent(reader.readMessage());
+        case 5 -> readCanonicalizeRequest(reader.readMessage());
+        case 6 -> readImportRequest(reader.readMessage());
+        case 8 -> readFunctionCallRequest(reader.readMessage());
+        case 9 -> readVersionResponse(reader.readMessage());
+        default -> {
+          reader.skip(tag);
+
+          yield new UnsupportedMessage(tag >>> 3);
+        }
+      };
+    }
+
+    if(message == null) {
+      throw new IOException("Malformed packet: missing message");
+    }
+
+    return message;
+  }
+
+  private static ProtocolError readProtocolError(ProtobufReader reader) throws IOException {
+    int type = 0;
+    int id = 0;
+    String message = "";
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      switch(tag >>> 3) {
+        case 1 -> type = reader.readUInt32();
+        case 2 -> id = reader.readUInt32();
+        case 3 -> message = reader.readString();
+        default -> reader.skip(tag);
+      }
+    }
+
+    return new ProtocolError(type, id, message);
+  }
+
+  private static CompileResponse readCompileResponse(ProtobufReader reader) throws IOException {
+    byte[] css = EMPTY_CSS;
+    String failure = null;
+    List<String> loadedUrls = new ArrayList<>();
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      switch(tag >>> 3) {
+        case 2 -> css = readCompileSuccess(reader.readMessage());
+        case 3 -> failure = readCompileFailure(reader.readMessage());
+        case 4 -> loadedUrls.add(reader.readString());
+        default -> reader.skip(tag);
+      }
+    }
+
+    return new CompileResponse(css, failure, List.copyOf(loadedUrls));
+  }
+
+  private static byte[] readCompileSuccess(ProtobufReader reader) throws IOException {
+    byte[] css = EMPTY_CSS;
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      if(tag >>> 3 == 1) {
+        byte[] bytes = reader.readBytes(1);
+
+        // The command line compiler terminates its output with a newline, keep doing so for compatibility:
+        if(bytes.length > 1) {
+          bytes[bytes.length - 1] = '\n';
+          css = bytes;
+        }
+        else {
+          css = EMPTY_CSS;
+        }
+      }
+      else {
+        reader.skip(tag);
+      }
+    }
+
+    return css;
+  }
+
+  private static String readCompileFailure(ProtobufReader reader) throws IOException {
+    String message = "";
+    String formatted = "";
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      switch(tag >>> 3) {
+        case 1 -> message = reader.readString();
+        case 4 -> formatted = reader.readString();
+        default -> reader.skip(tag);
+      }
+    }
+
+    return formatted.isEmpty() ? "Error: " + message : formatted;
+  }
+
+  private static LogEvent readLogEvent(ProtobufReader reader) throws IOException {
+    LogEventType type = LogEventType.WARNING;
+    String message = "";
+    String formatted = "";
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      switch(tag >>> 3) {
+        case 2 -> {
+          int ordinal = reader.readUInt32();
+
+          type = ordinal < LogEventType.values().length ? LogEventType.values()[ordinal] : LogEventType.WARNING;
+        }
+        case 3 -> message = reader.readString();
+        case 6 -> formatted = reader.readString();
+        default -> reader.skip(tag);
+      }
+    }
+
+    return new LogEvent(type, message, formatted.isEmpty() ? message : formatted);
+  }
+
+  private static CanonicalizeRequest readCanonicalizeRequest(ProtobufReader reader) throws IOException {
+    int id = 0;
+    int importerId = 0;
+    String url = "";
+    boolean fromImport = false;
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      switch(tag >>> 3) {
+        case 1 -> id = reader.readUInt32();
+        case 3 -> importerId = reader.readUInt32();
+        case 4 -> url = reader.readString();
+        case 5 -> fromImport = reader.readBool();
+        default -> reader.skip(tag);
+      }
+    }
+
+    return new CanonicalizeRequest(id, importerId, url, fromImport);
+  }
+
+  private static ImportRequest readImportRequest(ProtobufReader reader) throws IOException {
+    int id = 0;
+    int importerId = 0;
+    String url = "";
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      switch(tag >>> 3) {
+        case 1 -> id = reader.readUInt32();
+        case 3 -> importerId = reader.readUInt32();
+        case 4 -> url = reader.readString();
+        default -> reader.skip(tag);
+      }
+    }
+
+    return new ImportRequest(id, importerId, url);
+  }
+
+  private static FunctionCallRequest readFunctionCallRequest(ProtobufReader reader) throws IOException {
+    int id = 0;
+    String name = null;
+    int functionId = 0;
+    List<ProtobufReader> arguments = new ArrayList<>();
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      switch(tag >>> 3) {
+        case 1 -> id = reader.readUInt32();
+        case 2 -> name = reader.readString();
+        case 3 -> functionId = reader.readUInt32();
+        case 4 -> arguments.add(reader.readMessage());
+        default -> reader.skip(tag);
+      }
+    }
+
+    return new FunctionCallRequest(id, name, functionId, List.copyOf(arguments));
+  }
+
+  private static VersionResponse readVersionResponse(ProtobufReader reader) throws IOException {
+    int id = 0;
+    String protocolVersion = "";
+    String compilerVersion = "";
+    String implementationVersion = "";
+    String implementationName = "";
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      switch(tag >>> 3) {
+        case 1 -> protocolVersion = reader.readString();
+        case 2 -> compilerVersion = reader.readString();
+        case 3 -> implementationVersion = reader.readString();
+        case 4 -> implementationName = reader.readString();
+        case 5 -> id = reader.readUInt32();
+        default -> reader.skip(tag);
+      }
+    }
+
+    return new VersionResponse(id, protocolVersion, compilerVersion, implementationVersion, implementationName);
+  }
+
+  private static long readVarint(InputStream inputStream) throws IOException {
+    long result = 0;
+
+    for(int shift = 0; shift < 64; shift += 7) {
+      int b = inputStream.read();
+
+      if(b == -1) {
+        if(shift == 0) {
+          return -1;
+        }
+
+        throw new EOFException("Unexpected end of stream while reading varint");
+      }
+
+      result |= (long)(b & 0x7F) << shift;
+
+      if((b & 0x80) == 0) {
+        return result;
+      }
+    }
+
+    throw new IOException("Malformed varint");
+  }
+}
@@ -0,0 +1,179 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Base class for importers which load stylesheets from a tree of files,
+ * identified by relative paths using forward slashes. Resolves URLs the same
+ * way Dart Sass resolves them for files on disk: the extension can be omitted,
+ * partials are prefixed with an underscore, directories can be imported by
+ * their index file and imports can have import-only variants.
+ *
+ * Results of canonicalizing and loading are cached.
+ */
+abstract class FileResolvingImporter implements Importer {
+  private static final String[] EXTENSIONS = {".scss", ".sass", ".css"};
+
+  private final Map<String, Optional<URI>> canonicalUrls = new ConcurrentHashMap<>();
+  private final Map<URI, Stylesheet> stylesheets = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the relative path for an absolute URL which belongs to this importer.
+   *
+   * @param url an absolute {@link URI}, never {@code null}
+   * @return a relative path, or {@code null} if the URL does not belong to this importer
+   */
+  abstract String toRelativePath(URI url);
+
+  /**
+   * Returns the canonical URL of the file with the given relative path, if
+   * it exists.
+   *
+   * @param relativePath a normalized relative path, never {@code null}
+   * @return a canonical {@link URI}, or {@code null} if the file does not exist
+   * @throws IOException when an IO error occurred
+   */
+  abstract URI locate(String relativePath) throws IOException;
+
+  /**
+   * Reads the file with the given canonical URL.
+   *
+   * @param canonicalUrl a canonical {@link URI} returned by {@link #locate(String)}, never {@code null}
+   * @return the contents of the file, or {@code null} if it does not exist
+   * @throws IOException when an IO error occurred
+   */
+  abstract String read(URI canonicalUrl) throws IOException;
+
+  @Override
+  public final URI canonicalize(String url, boolean fromImport) throws IOException {
+    String key = (fromImport ? "import:" : "use:") + url;
+    Optional<URI> cached = canonicalUrls.get(key);
+
+    if(cached == null) {
+      String relativePath = relativePath(url);
+
+      cached = Optional.ofNullable(relativePath == null ? null : resolve(relativePath, fromImport));
+      canonicalUrls.put(key, cached);
+    }
+
+    return cached.orElse(null);
+  }
+
+  @Override
+  public final Stylesheet load(URI canonicalUrl) throws IOException {
+    Stylesheet stylesheet = stylesheets.get(canonicalUrl);
+
+    if(stylesheet == null) {
+      String contents = read(canonicalUrl);
+
+      if(contents == null) {
+        return null;
+      }
+
+      stylesheet = new Stylesheet(contents, syntaxOf(canonicalUrl.getPath() == null ? canonicalUrl.toString() : canonicalUrl.getPath()));
+      stylesheets.put(canonicalUrl, stylesheet);
+    }
+
+    return stylesheet;
+  }
+
+  private String relativePath(String url) throws IOException {
+    URI uri;
+
+    try {
+      uri = new URI(url);
+    }
+    catch(URISyntaxException e) {
+      throw new IOException("Invalid URL: " + url, e);
+    }
+
+    if(uri.isAbsolute()) {
+      return toRelativePath(uri);
+    }
+
+    if(uri.getPath() == null || uri.getPath().isEmpty() || uri.getQuery() != null || uri.getFragment() != null) {
+      return null;
+    }
+
+    String path = uri.normalize().getPath();
+
+    while(path.startsWith("/")) {
+      path = path.substring(1);
+    }
+
+    // Paths escaping the base of this importer are not supported:
+    return path.isEmpty() || path.equals("..") || path.startsWith("../") ? null : path;
+  }
+
+  private URI resolve(String path, boolean fromImport) throws IOException {
+    for(String extension : EXTENSIONS) {
+      if(path.endsWith(extension)) {
+        String base = path.substring(0, path.length() - extension.length());
+
+        if(fromImport) {
+          URI url = resolvePartial(base + ".import" + extension);
+
+          if(url != null) {
+            return url;
+          }
+        }
+
+        return resolvePartial(path);
+      }
+    }
+
+    URI url = fromImport ? resolveExtensions(path + ".import") : null;
+
+    if(url == null) {
+      url = resolveExtensions(path);
+    }
+
+    if(url == null && fromImport) {
+      url = resolveExtensions(path + "/index.import");
+    }
+
+    if(url == null) {
+      url = resolveExtensions(path + "/index");
+    }
+
+    return url;
+  }
+
+  private URI resolveExtensions(String path) throws IOException {
+    URI scss = resolvePartial(path + ".scss");
+    URI sass = resolvePartial(path + ".sass");
+
+    if(scss != null && sass != null) {
+      throw new IOException("It's not clear which file to import, found: " + scss + " and " + sass);
+    }
+
+    if(scss != null || sass != null) {
+      return scss == null ? sass : scss;
+    }
+
+    return resolvePartial(path + ".css");
+  }
+
+  private URI resolvePartial(String path) throws IOException {
+    int slash = path.lastIndexOf('/');
+    URI partial = locate(path.substring(0, slash + 1) + "_" + path.substring(slash + 1));
+    URI file = locate(path);
+
+    if(partial != null && file != null) {
+      throw new IOException("It's not clear which file to import, found: " + partial + " and " + file);
+    }
+
+    return partial == null ? file : partial;
+  }
+
+  private static Syntax syntaxOf(String path) {
+    return path.endsWith(".sass") ? Syntax.INDENTED
+      : path.endsWith(".css") ? Syntax.CSS
+      : Syntax.SCSS;
+  }
+}
@@ -0,0 +1,107 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Resolves and loads stylesheets imported with {@code @use}, {@code @forward}
+ * or {@code @import} from a source other than the root of the compiler, like
+ * resources on the classpath or files in a {@link java.nio.file.FileSystem}
+ * which is not the default file system.
+ * <p>
+ * Importing is done in two steps. First the URL as written in the stylesheet
+ * is canonicalized to an absolute {@link URI} which uniquely identifies the
+ * stylesheet. The compiler then loads the stylesheet using the canonical URL,
+ * but only when it did not load it before during the same compilation.
+ * <p>
+ * When a stylesheet loaded by an importer imports another stylesheet using a
+ * relative URL, the URL is first resolved against the canonical URL of the
+ * importing stylesheet, and the absolute result is passed to the same importer.
+ * <p>
+ * Implementations must be thread safe, as they can be called by multiple
+ * compilations concurrently.
+ */
+public interface Importer {
+
+  /**
+   * Creates an {@link Importer} which loads stylesheets from the resources of
+   * the given {@link ClassLoader}. URLs are resolved relative to the given base
+   * path, which is a resource name like {@code "org/example/styles"}. The
+   * canonical URLs of the stylesheets use the {@code classpath} scheme.
+   * <p>
+   * The importer follows the same rules as Dart Sass does for files, and so
+   * supports partials, index files and omitting the file extension. As
+   * resources are not expected to change, the results of canonicalizing and
+   * loading are cached for the lifetime of the importer.
+   *
+   * @param classLoader a {@link ClassLoader}, cannot be {@code null}
+   * @param basePath a resource name to resolve URLs against, cannot be {@code null}
+   * @return an {@link Importer}, never {@code null}
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  static Importer ofClasspath(ClassLoader classLoader, String basePath) {
+    return new ClasspathImporter(classLoader, basePath);
+  }
+
+  /**
+   * Creates an {@link Importer} which loads stylesheets from the given base
+   * directory. The directory can be part of any {@link java.nio.file.FileSystem},
+   * like a zip file system or an in-memory file system. The canonical URLs of the
+   * stylesheets are the URIs of their paths.
+   * <p>
+   * The importer follows the same rules as Dart Sass does for files, and so
+   * supports partials, index files and omitting the file extension. The results
+   * of canonicalizing and loading are cached for the lifetime of the importer,
+   * so changes to the files are not seen by an importer which loaded them before.
+   *
+   * @param baseDirectory a directory to resolve URLs against, cannot be {@code null}
+   * @return an {@link Importer}, never {@code null}
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  static Importer ofPath(Path baseDirectory) {
+    return new PathImporter(baseDirectory);
+  }
+
+  /**
+   * Converts the given URL into a canonical {@link URI}, if this importer can
+   * load the stylesheet it refers to.
+   *
+   * @param url a URL as written in the stylesheet, or an absolute URL resolved against the importing stylesheet, never {@code null}
+   * @param fromImport {@code true} when the URL comes from an {@code @import} rule, otherwise {@code false}
+   * @return a canonical absolute {@link URI}, or {@code null} when this importer cannot load the stylesheet
+   * @throws IOException when the URL could not be canonicalized, which fails the compilation
+   */
+  URI canonicalize(String url, boolean fromImport) throws IOException;
+
+  /**
+   * Loads the stylesheet with the given canonical URL.
+   *
+   * @param canonicalUrl a canonical {@link URI} returned by {@link #canonicalize(String, boolean)}, never {@code null}
+   * @return a {@link Stylesheet}, or {@code null} when the stylesheet could not be found
+   * @throws IOException when the stylesheet could not be loaded, which fails the compilation
+   */
+  Stylesheet load(URI canonicalUrl) throws IOException;
+
+  /**
+   * The contents of a stylesheet loaded by an {@link Importer}.
+   *
+   * @param contents the text of the stylesheet, cannot be {@code null}
+   * @param syntax the {@link Syntax} of the stylesheet, cannot be {@code null}
+   */
+  record Stylesheet(String contents, Syntax syntax) {
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param contents the text of the stylesheet, cannot be {@code null}
+     * @param syntax the {@link Syntax} of the stylesheet, cannot be {@code null}
+     * @throws NullPointerException when any argument is {@code null}
+     */
+    public Stylesheet {
+      Objects.requireNonNull(contents, "contents");
+      Objects.requireNonNull(syntax, "syntax");
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package org.int4.scss.compiler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * A histogram of durations with microsecond resolution. Each power of two is
+ * split into eight buckets, so values are reported with an error of at most
+ * 12.5%. The buckets are a fixed array of counters, so recording a duration
+ * allocates nothing and takes no locks, and can be done concurrently.
+ */
+final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 40;  // about 12 days in microseconds
+  private static final long MAX_MICROS = (1L << (MAX_EXPONENT + 1)) - 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS);
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Records a duration.
+   *
+   * @param nanos a duration in nanoseconds, negative durations are recorded as 0
+   */
+  void record(long nanos) {
+    long clamped = Math.max(0, nanos);
+
+    counts.incrementAndGet(indexOf(Math.min(clamped / 1000, MAX_MICROS)));
+    totalNanos.addAndGet(clamped);
+    maxNanos.accumulateAndGet(clamped, Math::max);
+  }
+
+  /**
+   * Returns the number of recorded durations.
+   *
+   * @return the number of recorded durations, never negative
+   */
+  long count() {
+    long count = 0;
+
+    for(int i = 0; i < counts.length(); i++) {
+      count += counts.get(i);
+    }
+
+    return count;
+  }
+
+  /**
+   * Returns the mean of the recorded durations.
+   *
+   * @return the mean in nanoseconds, or 0 when nothing was recorded
+   */
+  long mean() {
+    long count = count();
+
+    return count == 0 ? 0 : totalNanos.get() / count;
+  }
+
+  /**
+   * Returns the longest recorded duration.
+   *
+   * @return the longest duration in nanoseconds, or 0 when nothing was recorded
+   */
+  long max() {
+    return maxNanos.get();
+  }
+
+  /**
+   * Returns the duration which the given fraction of the recorded durations
+   * does not exceed. The result is the upper bound of the bucket holding the
+   * duration, but never exceeds the longest recorded duration.
+   *
+   * @param fraction a fraction between 0 and 1
+   * @return a duration in nanoseconds, or 0 when nothing was recorded
+   */
+  long percentile(double fraction) {
+    long count = count();
+
+    if(count == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long)Math.ceil(fraction * count));
+    long seen = 0;
+
+    for(int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+
+      if(seen >= rank) {
+        return Math.min(upperBoundOf(i) * 1000 + 999, max());
+      }
+    }
+
+    return max();  // recorded concurrently with the counting above
+  }
+
+  private static int indexOf(long micros) {
+    if(micros < 2 * SUB_BUCKETS) {
+      return (int)micros;
+    }
+
+    int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+
+    return shift * SUB_BUCKETS + (int)(micros >>> shift);
+  }
+
+  private static long upperBoundOf(int index) {
+    if(index < 2 * SUB_BUCKETS) {
+      return index;
+    }
+
+    int shift = index / SUB_BUCKETS - 1;
+
+    return ((long)(index % SUB_BUCKETS + SUB_BUCKETS + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,103 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Loads stylesheets from a directory of any file system. Canonical URLs are
+ * the URIs of the paths. For file systems like the zip file system these URIs
+ * are not hierarchical, and URLs are then matched against the URI of the base
+ * directory as strings.
+ */
+final class PathImporter extends FileResolvingImporter {
+  private final Path baseDirectory;
+  private final URI baseUri;
+  private final Map<URI, Path> paths = new ConcurrentHashMap<>();
+
+  PathImporter(Path baseDirectory) {
+    this.baseDirectory = Objects.requireNonNull(baseDirectory, "baseDirectory").toAbsolutePath().normalize();
+
+    String uri = this.baseDirectory.toUri().toString();
+
+    this.baseUri = URI.create(uri.endsWith("/") ? uri : uri + "/");
+  }
+
+  @Override
+  String toRelativePath(URI url) {
+    String path;
+
+    if(baseUri.isOpaque() || url.isOpaque()) {
+      String uri = url.toString();
+
+      if(!uri.startsWith(baseUri.toString())) {
+        return null;
+      }
+
+      try {
+        path = new URI(uri.substring(baseUri.toString().length())).normalize().getPath();
+      }
+      catch(URISyntaxException e) {
+        return null;
+      }
+    }
+    else {
+      // An empty authority, as in "file:///", can get lost when resolving URLs:
+      if(!baseUri.getScheme().equalsIgnoreCase(url.getScheme()) || !Objects.equals(authorityOf(baseUri), authorityOf(url))) {
+        return null;
+      }
+
+      String urlPath = url.normalize().getPath();
+
+      if(urlPath == null || !urlPath.startsWith(baseUri.getPath())) {
+        return null;
+      }
+
+      path = urlPath.substring(baseUri.getPath().length());
+    }
+
+    return path == null || path.startsWith("../") || path.startsWith("/") ? null : path;
+  }
+
+  @Override
+  URI locate(String relativePath) {
+    Path path = baseDirectory.resolve(relativePath).normalize();
+
+    if(!path.startsWith(baseDirectory) || !Files.isRegularFile(path)) {
+      return null;
+    }
+
+    URI uri = path.toUri();
+
+    paths.put(uri, path);
+
+    return uri;
+  }
+
+  @Override
+  String read(URI canonicalUrl) throws IOException {
+    Path path = paths.get(canonicalUrl);
+
+    if(path == null) {
+      return null;
+    }
+
+    try {
+      return Files.readString(path, StandardCharsets.UTF_8);
+    }
+    catch(NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  private static String authorityOf(URI uri) {
+    return uri.getRawAuthority() == null || uri.getRawAuthority().isEmpty() ? null : uri.getRawAuthority();
+  }
+}
@@ -0,0 +1,104 @@
+package org.int4.scss.compiler;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Keeps track of all compiler processes which are still running, so they can
+ * be destroyed when the JVM exits, even when they are still busy compiling.
+ * Processes are destroyed including their descendants, as the wrapper scripts
+ * start the actual compiler as a child process. Processes which exit are
+ * forgotten automatically.
+ */
+final class ProcessReaper {
+  private static final Logger LOGGER = System.getLogger(ProcessReaper.class.getName());
+  private static final Set<Process> PROCESSES = ConcurrentHashMap.newKeySet();
+  private static final long GRACE_PERIOD_MILLIS = 2000;
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(ProcessReaper::destroyAll));
+  }
+
+  private ProcessReaper() {}
+
+  /**
+   * Registers a process, so it is destroyed when the JVM exits.
+   *
+   * @param process a {@link Process}, cannot be {@code null}
+   * @return the given process, never {@code null}
+   */
+  static Process register(Process process) {
+    PROCESSES.add(process);
+    process.onExit().thenRun(() -> PROCESSES.remove(process));
+
+    return process;
+  }
+
+  /**
+   * Returns the number of registered processes which are still running.
+   *
+   * @return the number of processes, never negative
+   */
+  static int count() {
+    return PROCESSES.size();
+  }
+
+  /**
+   * Destroys the given process and its descendants. Processes which did not
+   * exit after a grace period are destroyed forcibly.
+   *
+   * @param process a {@link Process}, cannot be {@code null}
+   */
+  static void destroy(Process process) {
+    List<ProcessHandle> handles = destroyTree(process);
+
+    CompletableFuture.delayedExecutor(GRACE_PERIOD_MILLIS, TimeUnit.MILLISECONDS, SCSSCompiler.EXECUTOR).execute(
+      () -> handles.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly)
+    );
+  }
+
+  /*
+   * Descendants are determined before destroying the process, as they can no
+   * longer be found once their parent exited.
+   */
+  private static List<ProcessHandle> destroyTree(Process process) {
+    List<ProcessHandle> handles = new ArrayList<>();
+
+    try {
+      process.descendants().forEach(handles::add);
+    }
+    catch(UnsupportedOperationException e) {
+      LOGGER.log(Level.DEBUG, "Unable to determine descendants of process " + process.pid(), e);
+    }
+
+    handles.add(process.toHandle());
+    handles.forEach(ProcessHandle::destroy);
+
+    return handles;
+  }
+
+  private static void destroyAll() {
+    List<ProcessHandle> handles = new ArrayList<>();
+
+    for(Process process : List.copyOf(PROCESSES)) {
+      handles.addAll(destroyTree(process));
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GRACE_PERIOD_MILLIS);
+
+    for(ProcessHandle handle : handles) {
+      try {
+        handle.onExit().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      }
+      catch(Exception e) {
+        handle.destroyForcibly();
+      }
+    }
+  }
+}
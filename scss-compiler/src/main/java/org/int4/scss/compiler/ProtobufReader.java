@@ -0,0 +1,138 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Minimal reader for the protocol buffers wire format. Only supports the
+ * field types used by the Dart Sass embedded protocol.
+ */
+class ProtobufReader {
+  private final byte[] data;
+  private final int limit;
+
+  private int position;
+
+  ProtobufReader(byte[] data) {
+    this(data, 0, data.length);
+  }
+
+  ProtobufReader(byte[] data, int offset, int length) {
+    this.data = data;
+    this.position = offset;
+    this.limit = offset + length;
+  }
+
+  boolean hasRemaining() {
+    return position < limit;
+  }
+
+  // Field number is in the upper bits, wire type in the lower three bits
+  int readTag() throws IOException {
+    return (int)readVarint();
+  }
+
+  long readVarint() throws IOException {
+    long result = 0;
+
+    for(int shift = 0; shift < 64; shift += 7) {
+      if(position >= limit) {
+        throw new IOException("Malformed protocol buffer: truncated varint");
+      }
+
+      byte b = data[position++];
+
+      result |= (long)(b & 0x7F) << shift;
+
+      if((b & 0x80) == 0) {
+        return result;
+      }
+    }
+
+    throw new IOException("Malformed protocol buffer: varint too long");
+  }
+
+  int readUInt32() throws IOException {
+    return (int)readVarint();
+  }
+
+  boolean readBool() throws IOException {
+    return readVarint() != 0;
+  }
+
+  double readDouble() throws IOException {
+    require(8);
+
+    long bits = 0;
+
+    for(int i = 0; i < 8; i++) {
+      bits |= (data[position++] & 0xFFL) << (i * 8);
+    }
+
+    return Double.longBitsToDouble(bits);
+  }
+
+  String readString() throws IOException {
+    int length = readLength();
+    String value = new String(data, position, length, StandardCharsets.UTF_8);
+
+    position += length;
+
+    return value;
+  }
+
+  /*
+   * Reads a length delimited field into a new array, followed by the given
+   * number of extra bytes, which are left zero for the caller to fill in.
+   */
+  byte[] readBytes(int extra) throws IOException {
+    int length = readLength();
+    byte[] value = new byte[length + extra];
+
+    System.arraycopy(data, position, value, 0, length);
+    position += length;
+
+    return value;
+  }
+
+  ProtobufReader readMessage() throws IOException {
+    int length = readLength();
+    ProtobufReader reader = new ProtobufReader(data, position, length);
+
+    position += length;
+
+    return reader;
+  }
+
+  void skip(int tag) throws IOException {
+    switch(tag & 7) {
+      case ProtobufWriter.VARINT -> readVarint();
+      case ProtobufWriter.FIXED64 -> skipBytes(8);
+      case ProtobufWriter.LENGTH_DELIMITED -> skipBytes(readLength());
+      case 5 -> skipBytes(4);
+      default -> throw new IOException("Malformed protocol buffer: unsupported wire type " + (tag & 7));
+    }
+  }
+
+  private void skipBytes(int count) throws IOException {
+    require(count);
+
+    position += count;
+  }
+
+  private int readLength() throws IOException {
+    long length = readVarint();
+
+    if(length < 0 || length > limit - position) {
+      throw new IOException("Malformed protocol buffer: invalid length " + length);
+    }
+
+    return (int)length;
+  }
+
+  private void require(int count) throws IOException {
+    if(limit - position < count) {
+      throw new IOException("Malformed protocol buffer: truncated field");
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Minimal writer for the protocol buffers wire format. Only supports the
+ * field types used by the Dart Sass embedded protocol.
+ */
+class ProtobufWriter {
+  static final int VARINT = 0;
+  static final int FIXED64 = 1;
+  static final int LENGTH_DELIMITED = 2;
+
+  private byte[] buffer = new byte[64];
+  private int size;
+
+  ProtobufWriter writeUInt(int field, long value) {
+    writeTag(field, VARINT);
+    writeVarint(value);
+
+    return this;
+  }
+
+  ProtobufWriter writeBool(int field, boolean value) {
+    return writeUInt(field, value ? 1 : 0);
+  }
+
+  ProtobufWriter writeDouble(int field, double value) {
+    long bits = Double.doubleToRawLongBits(value);
+
+    writeTag(field, FIXED64);
+    ensureCapacity(8);
+
+    for(int i = 0; i < 8; i++) {
+      buffer[size++] = (byte)(bits >>> (i * 8));
+    }
+
+    return this;
+  }
+
+  ProtobufWriter writeString(int field, String value) {
+    return writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  ProtobufWriter writeBytes(int field, byte[] value) {
+    writeTag(field, LENGTH_DELIMITED);
+    writeVarint(value.length);
+    ensureCapacity(value.length);
+    System.arraycopy(value, 0, buffer, size, value.length);
+    size += value.length;
+
+    return this;
+  }
+
+  ProtobufWriter writeMessage(int field, ProtobufWriter message) {
+    writeTag(field, LENGTH_DELIMITED);
+    writeVarint(message.size);
+    ensureCapacity(message.size);
+    System.arraycopy(message.buffer, 0, buffer, size, message.size);
+    size += message.size;
+
+    return this;
+  }
+
+  void writeVarint(long value) {
+    ensureCapacity(10);
+
+    long v = value;
+
+    while((v & ~0x7FL) != 0) {
+      buffer[size++] = (byte)((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+
+    buffer[size++] = (byte)v;
+  }
+
+  int size() {
+    return size;
+  }
+
+  byte[] toByteArray() {
+    return Arrays.copyOf(buffer, size);
+  }
+
+  void writeTo(OutputStream outputStream) throws IOException {
+    outputStream.write(buffer, 0, size);
+  }
+
+  private void writeTag(int field, int wireType) {
+    writeVarint((field << 3) | wireType);
+  }
+
+  private void ensureCapacity(int extra) {
+    if(size + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+    }
+  }
+}
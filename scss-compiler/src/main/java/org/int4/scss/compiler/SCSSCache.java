@@ -0,0 +1,528 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.int4.scss.compiler.EmbeddedProtocol.CompileRequest;
+import org.int4.scss.compiler.EmbeddedProtocol.LogEvent;
+
+/**
+ * A cache for the results of successful compilations, which can be shared by
+ * multiple {@link SCSSCompiler}s.
+ * <p>
+ * A result is cached under a key consisting of the stylesheet compiled, the
+ * options of the compiler and the version of Dart Sass. With each result the
+ * files loaded by the compilation are recorded, with their modification time,
+ * size and a hash of their contents. A cached result is only used when all
+ * these files are unchanged. Files of which the modification time and size are
+ * unchanged are assumed to be unchanged; only when these differ is the content
+ * hashed again.
+ * <p>
+ * Results of compilations which loaded stylesheets which are not files, like
+ * resources loaded by an {@link Importer}, are not cached, and neither are the
+ * results of compilers with Java functions, as it cannot be verified these
+ * results are still current.
+ * <p>
+ * The cache holds results up to a maximum number of bytes, and evicts the least
+ * recently used results when it is full. This includes the representations
+ * derived from a cached {@link CompiledStylesheet} after it was cached, like
+ * its string, data URI or compressed body.
+ * <p>
+ * Optionally, results are also stored in a directory, so they survive restarts of
+ * the JVM. A result found in the directory is used after checking the files it
+ * depends on, like a result held in memory. The directory holds results up to
+ * its own maximum number of bytes, and can be shared by multiple JVMs. Results
+ * of compilers with importers are not stored in the directory.
+ */
+public final class SCSSCache {
+  private static final Logger LOGGER = System.getLogger(SCSSCache.class.getName());
+
+  private final long maxBytes;
+  private final DiskCache diskCache;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);  // guarded by lock
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  private long bytes;  // guarded by lock
+
+  /**
+   * Creates a new {@link Builder} for a cache.
+   *
+   * @return a new {@link Builder}, never {@code null}
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private SCSSCache(Builder builder) {
+    this.maxBytes = builder.maxBytes;
+    this.diskCache = builder.directory == null ? null : new DiskCache(builder.directory, builder.maxDiskBytes);
+  }
+
+  /**
+   * Returns the maximum number of bytes the results in this cache can occupy.
+   *
+   * @return the maximum number of bytes, always positive
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Returns the estimated number of bytes occupied by the results in this cache.
+   *
+   * @return the number of bytes, never negative
+   */
+  public long getBytes() {
+    lock.lock();
+
+    try {
+      return bytes;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of results in this cache.
+   *
+   * @return the number of results, never negative
+   */
+  public int getSize() {
+    lock.lock();
+
+    try {
+      return entries.size();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns how often a current result was found in this cache.
+   *
+   * @return the number of hits, never negative
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * Returns how often no current result was found in this cache.
+   *
+   * @return the number of misses, never negative
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * Removes all results from this cache, including the results stored in its
+   * directory.
+   */
+  public void clear() {
+    lock.lock();
+
+    try {
+      entries.values().forEach(Entry::detach);
+      entries.clear();
+      bytes = 0;
+    }
+    finally {
+      lock.unlock();
+    }
+
+    if(diskCache != null) {
+      diskCache.clear();
+    }
+  }
+
+  /**
+   * Creates the key under which the result of the given request is cached.
+   *
+   * @param request a {@link CompileRequest}, cannot be {@code null}
+   * @return a key, or {@code null} if the results of the request cannot be cached
+   */
+  static Key keyOf(CompileRequest request) {
+    if(!request.functions().isEmpty()) {
+      return null;
+    }
+
+    return new Key(request, DartSassInstaller.version());
+  }
+
+  /**
+   * Returns the cached result for the given key, if it is still current.
+   *
+   * @param key a key, cannot be {@code null}
+   * @return a {@link Result}, or {@code null} if there was no current result
+   */
+  Result get(Key key) {
+    Entry entry;
+
+    lock.lock();
+
+    try {
+      entry = entries.get(key);
+    }
+    finally {
+      lock.unlock();
+    }
+
+    if(entry != null && entry.isCurrent()) {
+      hits.incrementAndGet();
+
+      return entry.result;
+    }
+
+    if(entry != null) {
+      remove(key, entry);
+    }
+
+    String name = diskCache == null ? null : DiskCache.nameOf(key);
+    Entry diskEntry = name == null ? null : diskCache.read(name);
+
+    if(diskEntry != null) {
+      store(key, diskEntry);
+      hits.incrementAndGet();
+
+      return diskEntry.result;
+    }
+
+    misses.incrementAndGet();
+
+    return null;
+  }
+
+  /**
+   * Caches the result of a successful compilation, if all the stylesheets it
+   * loaded are files which were not modified while it was compiling.
+   *
+   * @param key a key, cannot be {@code null}
+   * @param result a {@link Result}, cannot be {@code null}
+   * @param startMillis the time in milliseconds since the epoch at which the compilation started
+   */
+  void put(Key key, Result result, long startMillis) {
+    List<Dependency> dependencies = new ArrayList<>();
+
+    try {
+      for(String loadedUrl : result.loadedUrls()) {
+        URI uri = URI.create(loadedUrl);
+
+        if(!"file".equalsIgnoreCase(uri.getScheme())) {
+          return;
+        }
+
+        Path path = Path.of(uri);
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+        // A file modified during the compilation may not match the result:
+        if(attributes.lastModifiedTime().toMillis() >= startMillis) {
+          return;
+        }
+
+        dependencies.add(new Dependency(path, attributes.lastModifiedTime().toMillis(), attributes.size(), hash(path)));
+      }
+    }
+    catch(IOException | RuntimeException e) {
+      LOGGER.log(Level.DEBUG, "Not caching result, unable to read loaded stylesheets", e);
+
+      return;
+    }
+
+    Entry entry = new Entry(result, dependencies);
+    String name = diskCache == null ? null : DiskCache.nameOf(key);
+
+    store(key, entry);
+
+    if(name != null) {
+      diskCache.write(name, entry);
+    }
+  }
+
+  private void store(Key key, Entry entry) {
+    lock.lock();
+
+    try {
+      entry.size = entry.estimateSize();  // the stylesheet may have grown since the entry was created
+
+      if(entry.size > maxBytes) {
+        return;
+      }
+
+      Entry old = entries.put(key, entry);
+
+      if(old != null) {
+        bytes -= old.size;
+        old.detach();
+      }
+
+      entry.result.stylesheet().setGrowthListener(() -> resize(key, entry));
+      bytes += entry.size;
+
+      evictLeastRecentlyUsed();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /*
+   * Accounts for a representation the stylesheet of an entry derived after it
+   * was stored, like its gzip body, evicting other entries when this exceeds
+   * the maximum size. Looking up the entry marks it as recently used, which
+   * is accurate, as its stylesheet was just used.
+   */
+  private void resize(Key key, Entry entry) {
+    lock.lock();
+
+    try {
+      if(entries.get(key) == entry) {
+        long size = entry.estimateSize();
+
+        bytes += size - entry.size;
+        entry.size = size;
+
+        evictLeastRecentlyUsed();
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private void evictLeastRecentlyUsed() {
+    for(Iterator<Entry> iterator = entries.values().iterator(); bytes > maxBytes && iterator.hasNext();) {
+      Entry entry = iterator.next();
+
+      bytes -= entry.size;
+      entry.detach();
+      iterator.remove();
+    }
+  }
+
+  private void remove(Key key, Entry entry) {
+    lock.lock();
+
+    try {
+      if(entries.remove(key, entry)) {
+        bytes -= entry.size;
+        entry.detach();
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  static byte[] hash(Path path) throws IOException {
+    try(DigestInputStream is = new DigestInputStream(Files.newInputStream(path), MessageDigest.getInstance("SHA-256"))) {
+      is.transferTo(OutputStream.nullOutputStream());
+
+      return is.getMessageDigest().digest();
+    }
+    catch(NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /*
+   * The request includes the input, the importers, load paths and functions.
+   * Importers and functions are compared by identity.
+   */
+  record Key(CompileRequest request, String compilerVersion) {}
+
+  /*
+   * The output of a successful compilation, the events it logged and the URLs
+   * of the stylesheets it loaded.
+   */
+  record Result(CompiledStylesheet stylesheet, List<LogEvent> logEvents, List<String> loadedUrls) {
+    Result {
+      Objects.requireNonNull(stylesheet, "stylesheet");
+      logEvents = List.copyOf(logEvents);
+      loadedUrls = List.copyOf(loadedUrls);
+    }
+  }
+
+  static final class Dependency {
+    final Path path;
+    final long size;
+    final byte[] hash;
+
+    volatile long lastModified;
+
+    Dependency(Path path, long lastModified, long size, byte[] hash) {
+      this.path = path;
+      this.lastModified = lastModified;
+      this.size = size;
+      this.hash = hash;
+    }
+
+    static boolean areCurrent(List<Dependency> dependencies) {
+      for(Dependency dependency : dependencies) {
+        if(!dependency.isCurrent()) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    boolean isCurrent() {
+      try {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        if(lastModified == this.lastModified && attributes.size() == size) {
+          return true;
+        }
+
+        if(attributes.size() != size || !Arrays.equals(hash(path), hash)) {
+          return false;
+        }
+
+        this.lastModified = lastModified;  // content is unchanged, avoid hashing it again
+
+        return true;
+      }
+      catch(IOException e) {
+        return false;
+      }
+    }
+  }
+
+  static final class Entry {
+    final Result result;
+    final List<Dependency> dependencies;
+
+    long size;  // guarded by the lock of the cache holding the entry
+
+    Entry(Result result, List<Dependency> dependencies) {
+      this.result = result;
+      this.dependencies = List.copyOf(dependencies);
+      this.size = estimateSize();
+    }
+
+    boolean isCurrent() {
+      return Dependency.areCurrent(dependencies);
+    }
+
+    /*
+     * Stylesheets report the bytes they retain, including the representations
+     * they derived so far, like a string, a data URI or a gzip body, which are
+     * kept while the entry is cached. Strings are counted at two bytes per
+     * character, plus a fixed amount per object for headers and references.
+     */
+    long estimateSize() {
+      long size = result.stylesheet().retainedBytes();
+
+      for(LogEvent event : result.logEvents()) {
+        size += 64 + 2L * (event.message().length() + event.formatted().length());
+      }
+
+      for(Dependency dependency : dependencies) {
+        size += 128 + 4L * dependency.path.toString().length();  // path and loaded URL
+      }
+
+      return size;
+    }
+
+    /*
+     * Stops accounting for growth of the stylesheet, as the entry is no longer
+     * held by a cache:
+     */
+    void detach() {
+      result.stylesheet().setGrowthListener(null);
+    }
+  }
+
+  /**
+   * Builder for {@link SCSSCache}s.
+   */
+  public static final class Builder {
+    private long maxBytes = 32 * 1024 * 1024;
+    private Path directory;
+    private long maxDiskBytes = 256 * 1024 * 1024;
+
+    Builder() {}
+
+    /**
+     * Sets the maximum number of bytes the results in the cache can occupy.
+     * This is an estimate of the memory used. Defaults to 32 MiB.
+     *
+     * @param maxBytes the maximum number of bytes, must be positive
+     * @return this {@link Builder}, never {@code null}
+     * @throws IllegalArgumentException when {@code maxBytes} is not positive
+     */
+    public Builder maxBytes(long maxBytes) {
+      if(maxBytes < 1) {
+        throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+      }
+
+      this.maxBytes = maxBytes;
+
+      return this;
+    }
+
+    /**
+     * Sets the directory in which results are stored, so they survive restarts
+     * of the JVM. The directory is created when needed. Setting {@code null}, the
+     * default, keeps results only in memory.
+     *
+     * @param directory a directory {@link Path}, can be {@code null}
+     * @return this {@link Builder}, never {@code null}
+     */
+    public Builder directory(Path directory) {
+      this.directory = directory;
+
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of bytes the results stored in the directory can
+     * occupy. Defaults to 256 MiB.
+     *
+     * @param maxDiskBytes the maximum number of bytes, must be positive
+     * @return this {@link Builder}, never {@code null}
+     * @throws IllegalArgumentException when {@code maxDiskBytes} is not positive
+     */
+    public Builder maxDiskBytes(long maxDiskBytes) {
+      if(maxDiskBytes < 1) {
+        throw new IllegalArgumentException("maxDiskBytes must be positive: " + maxDiskBytes);
+      }
+
+      this.maxDiskBytes = maxDiskBytes;
+
+      return this;
+    }
+
+    /**
+     * Creates a new {@link SCSSCache} with the settings of this builder.
+     *
+     * @return a new {@link SCSSCache}, never {@code null}
+     */
+    public SCSSCache build() {
+      return new SCSSCache(this);
+    }
+  }
+}
@@ -1,44 +1,81 @@
 package org.int4.scss.compiler;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Base64;
-import java.util.Comparator;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+
+import org.int4.scss.compiler.CompilerEvents.CompileEvent;
+import org.int4.scss.compiler.CompilerEvents.DiagnosticsEvent;
+import org.int4.scss.compiler.CompilerEvents.ProcessStartEvent;
+import org.int4.scss.compiler.EmbeddedProtocol.CompileRequest;
+import org.int4.scss.compiler.EmbeddedProtocol.CompileResponse;
+import org.int4.scss.compiler.EmbeddedProtocol.FileInput;
+import org.int4.scss.compiler.EmbeddedProtocol.HostFunction;
+import org.int4.scss.compiler.EmbeddedProtocol.Input;
+import org.int4.scss.compiler.EmbeddedProtocol.LogEvent;
+import org.int4.scss.compiler.EmbeddedProtocol.LogEventType;
+import org.int4.scss.compiler.EmbeddedProtocol.StringInput;
 
 /**
- * A SCSS compiler which can compile SCSS files.
+ * A SCSS compiler which can compile SCSS files, or stylesheets held in memory.
+ * <p>
+ * Compilations of the same stylesheet requested concurrently, by this or
+ * another compiler with the same options, engine and cache, are performed only
+ * once. Each caller receives the result, and has the errors, warnings and
+ * deprecations of the compilation passed to its own handlers. A caller which is
+ * interrupted while waiting stops waiting without affecting the other callers.
+ * Compilers with Java functions do not share compilations.
+ * <p>
+ * A compilation which is no longer awaited by any caller, because all callers
+ * were interrupted or the {@link Builder#timeout(Duration) timeout} expired,
+ * is stopped by destroying the compiler process running it, including any
+ * processes it started. Compiler processes still running when the JVM exits
+ * are destroyed as well.
  */
 public class SCSSCompiler {
   private enum OperatingSystem { WINDOWS, LINUX, MAC }
 
   private static final Logger LOGGER = System.getLogger(SCSSCompiler.class.getName());
-  private static final Path TEMP_DIRECTORY;
   private static final OperatingSystem OS = getOS();
   private static final ThreadFactory FACTORY = Thread.ofVirtual().factory();
-  private static final Executor EXECUTOR = r -> FACTORY.newThread(r).start();
+
+  static final String PLATFORM = OS.toString().toLowerCase() + "-" + System.getProperty("os.arch").toLowerCase();
+  static final Executor EXECUTOR = r -> FACTORY.newThread(r).start();
+  static final EmbeddedCompiler.ProcessFactory PROCESS_FACTORY = () -> createProcess(List.of("--embedded"));
+
   private static final Consumer<List<String>> DEFAULT_ERRORS_HANDLER = list -> {
     if(!list.isEmpty()) {
       throw new SCSSProcessingException(list.stream().collect(Collectors.joining()));
@@ -46,66 +83,95 @@ public class SCSSCompiler {
   };
   private static final Consumer<List<String>> DEFAULT_WARNINGS_HANDLER = list -> list.stream().forEach(msg -> LOGGER.log(Level.WARNING, msg));
   private static final Consumer<List<String>> DEFAULT_DEPRECATIONS_HANDLER = list -> list.stream().forEach(msg -> LOGGER.log(Level.INFO, msg));
+  private static final SingleFlight<Flight, Outcome> FLIGHTS = new SingleFlight<>();
+  private static final ThreadLocal<Executor> CURRENT_EXECUTOR = new ThreadLocal<>();  // set on threads running tasks of a compiler
+  private static final CompiledStylesheet EMPTY = new CompiledStylesheet(new byte[0]);
+  private static final SCSSMetrics METRICS = SCSSMetrics.INSTANCE;
 
   private final Path root;
   private final Consumer<List<String>> errorsHandler;
   private final Consumer<List<String>> warningsHandler;
   private final Consumer<List<String>> deprecationsHandler;
+  private final SCSSEngine engine;
+  private final List<Importer> importers;
+  private final List<HostFunction> functions;
+  private final SCSSCache cache;
+  private final Executor executor;
+  private final Semaphore permits;  // null when unlimited
+  private final Duration timeout;  // null when unlimited
+  private final boolean precompress;
+  private final CompileListener listener;  // null when there is none
 
-  static {
-    Path tempDirectory = null;
-    String platform = OS.toString().toLowerCase() + "-" + System.getProperty("os.arch").toLowerCase();
+  private static CompletableFuture<Installation> installation;  // guarded by SCSSCompiler.class
 
-    try {
-      tempDirectory = Files.createTempDirectory("org.int4.scss-");
+  private record Installation(Path directory, List<String> sassCommand) {}
+
+  /*
+   * Identifies compilations which can be shared; compilers with a different
+   * engine or cache do not share compilations.
+   */
+  private record Flight(CompileRequest request, SCSSEngine engine, SCSSCache cache, Duration timeout) {}
+
+  /*
+   * The outcome of a compilation, which is reported to each caller sharing it.
+   * The stylesheet is empty and the failure is set when the compilation failed.
+   */
+  private record Outcome(CompiledStylesheet stylesheet, List<LogEvent> logEvents, List<String> loadedUrls, String failure) {}
 
-      Path shutdownHookTempDirectory = tempDirectory;
+  /**
+   * Starts preparing the Dart SCSS compiler in the background, if this was not
+   * done yet. Preparation involves extracting the compiler for the current
+   * platform, and happens automatically on first use. Applications can call this
+   * method early, so the preparation is complete before the first compilation
+   * is needed. Compilations started while preparation is still in progress wait
+   * for it to complete.
+   * <p>
+   * If preparation fails, the returned future completes exceptionally, and the
+   * next call or compilation attempts the preparation again.
+   *
+   * @return a {@link CompletableFuture} which completes when the compiler is ready, never {@code null}
+   */
+  public static CompletableFuture<Void> prepare() {
+    return installation().thenApply(i -> null);
+  }
 
-      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+  private static synchronized CompletableFuture<Installation> installation() {
+    if(installation == null || installation.isCompletedExceptionally()) {
+      installation = CompletableFuture.supplyAsync(() -> {
         try {
-          deleteDirectoryRecursively(shutdownHookTempDirectory);
+          Path directory = DartSassInstaller.install(PLATFORM);
+
+          return new Installation(directory, resolveCommand(directory));
         }
         catch(IOException e) {
-          e.printStackTrace();
-        }
-      }));
-
-      try(InputStream is = SCSSCompiler.class.getResourceAsStream("/dart-sass-" + platform + ".zip")) {
-        if(is == null) {
-          throw new IllegalStateException("Unsupported platform: " + platform);
+          throw new UncheckedIOException("Unable to initialize Dart SCSS compiler for platform: " + PLATFORM, e);
         }
+      }, EXECUTOR);
+    }
 
-        try(ZipInputStream zis = new ZipInputStream(is)) {
-          for(;;) {
-            ZipEntry entry = zis.getNextEntry();
-
-            if(entry == null) {
-              break;
-            }
-
-            Path entryPath = tempDirectory.resolve(entry.getName());
+    return installation;
+  }
 
-            if(entry.isDirectory()) {
-              Files.createDirectories(entryPath); // Create the directory if entry is a folder
-            }
-            else {
-              Files.copy(zis, entryPath);
+  private static Installation awaitInstallation() throws IOException {
+    try {
+      return installation().get();
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
 
-              if(entry.getName().endsWith("sass") || entry.getName().endsWith("dart")) {
-                entryPath.toFile().setExecutable(true);
-              }
-            }
+      throw new InterruptedIOException("Interrupted while preparing Dart SCSS compiler");
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof UncheckedIOException uioe) {
+        throw new IOException(uioe.getMessage(), uioe.getCause());
+      }
 
-            zis.closeEntry();
-          }
-        }
+      if(e.getCause() instanceof RuntimeException re) {
+        throw re;
       }
-    }
-    catch(IOException e) {
-      throw new IllegalStateException("Unable to initialize Dart SCSS compiler for platform: " + platform, e);
-    }
 
-    TEMP_DIRECTORY = tempDirectory;
+      throw new IllegalStateException("Unable to initialize Dart SCSS compiler for platform: " + PLATFORM, e.getCause());
+    }
   }
 
   /**
@@ -133,7 +199,7 @@ public class SCSSCompiler {
    * @throws NullPointerException when any argument is {@code null}
    */
   public static SCSSCompiler of(Path root) {
-    return new SCSSCompiler(root, null, null, null);
+    return builder(root).build();
   }
 
   /**
@@ -151,14 +217,79 @@ public class SCSSCompiler {
    * @throws NullPointerException when any argument is {@code null}
    */
   public static SCSSCompiler of(Path root, Consumer<List<String>> errorsHandler, Consumer<List<String>> warningsHandler, Consumer<List<String>> deprecationsHandler) {
-    return new SCSSCompiler(root, errorsHandler, warningsHandler, deprecationsHandler);
+    return builder(root)
+      .errorsHandler(errorsHandler)
+      .warningsHandler(warningsHandler)
+      .deprecationsHandler(deprecationsHandler)
+      .build();
+  }
+
+  /**
+   * Creates a new {@link Builder} for a reusable {@link SCSSCompiler}. Unless
+   * configured otherwise, the compiler will use the default handlers and the
+   * {@link SCSSEngine#getDefault() default engine}.
+   *
+   * @param root a root for resolving imports against, cannot be {@code null}
+   * @return a new {@link Builder}, never {@code null}
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public static Builder builder(Path root) {
+    return new Builder(root);
+  }
+
+  SCSSCompiler(Builder builder) {
+    this.root = builder.root;
+    this.errorsHandler = builder.errorsHandler == null ? DEFAULT_ERRORS_HANDLER : builder.errorsHandler;
+    this.warningsHandler = builder.warningsHandler == null ? DEFAULT_WARNINGS_HANDLER : builder.warningsHandler;
+    this.deprecationsHandler = builder.deprecationsHandler == null ? DEFAULT_DEPRECATIONS_HANDLER : builder.deprecationsHandler;
+    this.engine = builder.engine == null ? SCSSEngine.getDefault() : builder.engine;
+    this.importers = builder.importers;
+    this.functions = builder.functions;
+    this.cache = builder.cache;
+    this.executor = builder.executor == null ? EXECUTOR : builder.executor;
+    this.permits = builder.maxConcurrentCompilations == 0 ? null : new Semaphore(builder.maxConcurrentCompilations, true);
+    this.timeout = builder.timeout;
+    this.precompress = builder.precompress;
+    this.listener = builder.listener;
+  }
+
+  /**
+   * Compiles the given scss file to a {@link CompiledStylesheet}, from which
+   * the CSS can be obtained in various forms without compiling it again.
+   *
+   * @param scss a SCSS file to compile, cannot be {@code null}
+   * @return a {@link CompiledStylesheet}, never {@code null}
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public CompiledStylesheet compile(Path scss) throws IOException {
+    return compile(fileInput(scss));
+  }
+
+  /**
+   * Compiles the given source to a {@link CompiledStylesheet}, from which the
+   * CSS can be obtained in various forms without compiling it again. Relative
+   * imports in the source are resolved against the root of this compiler.
+   *
+   * @param source a stylesheet to compile, cannot be {@code null}
+   * @param syntax the {@link Syntax} of the stylesheet, cannot be {@code null}
+   * @return a {@link CompiledStylesheet}, never {@code null}
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public CompiledStylesheet compile(CharSequence source, Syntax syntax) throws IOException {
+    return compile(stringInput(source, syntax));
   }
 
-  SCSSCompiler(Path root, Consumer<List<String>> errorsHandler, Consumer<List<String>> warningsHandler, Consumer<List<String>> deprecationsHandler) {
-    this.root = Objects.requireNonNull(root, "root");
-    this.errorsHandler = errorsHandler == null ? DEFAULT_ERRORS_HANDLER : errorsHandler;
-    this.warningsHandler = warningsHandler == null ? DEFAULT_WARNINGS_HANDLER : warningsHandler;
-    this.deprecationsHandler = deprecationsHandler == null ? DEFAULT_DEPRECATIONS_HANDLER : deprecationsHandler;
+  private CompiledStylesheet compile(Input input) throws IOException {
+    MessageConsumer messageConsumer = new MessageConsumer();
+    CompiledStylesheet stylesheet = compile(input, messageConsumer).stylesheet();
+
+    messageConsumer.callHandlers();
+
+    return stylesheet;
   }
 
   /**
@@ -171,15 +302,122 @@ public class SCSSCompiler {
    * @throws NullPointerException when any argument is {@code null}
    */
   public String asString(Path scss) throws IOException {
-    MessageConsumer messageConsumer = new MessageConsumer();
+    return asString(fileInput(scss));
+  }
+
+  /**
+   * Compiles the given source to a CSS string. Relative imports in the source
+   * are resolved against the root of this compiler.
+   *
+   * @param source a stylesheet to compile, cannot be {@code null}
+   * @param syntax the {@link Syntax} of the stylesheet, cannot be {@code null}
+   * @return a CSS string, never {@code null}
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public String asString(CharSequence source, Syntax syntax) throws IOException {
+    return asString(stringInput(source, syntax));
+  }
+
+  private String asString(Input input) throws IOException {
+    return compile(input).asString();
+  }
+
+  /**
+   * Compiles the given scss file to a CSS string asynchronously, on the
+   * executor of this compiler.
+   *
+   * @param scss a SCSS file to compile, cannot be {@code null}
+   * @return a {@link CompletableFuture} which completes with a CSS string, or
+   *   exceptionally with an {@link IOException} or {@link SCSSProcessingException}, never {@code null}
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public CompletableFuture<String> asStringAsync(Path scss) {
+    FileInput input = fileInput(scss);
+
+    return async(() -> asString(input));
+  }
+
+  /**
+   * Compiles the given source to a CSS string asynchronously, on the executor
+   * of this compiler. Relative imports in the source are resolved against the
+   * root of this compiler.
+   *
+   * @param source a stylesheet to compile, cannot be {@code null}
+   * @param syntax the {@link Syntax} of the stylesheet, cannot be {@code null}
+   * @return a {@link CompletableFuture} which completes with a CSS string, or
+   *   exceptionally with an {@link IOException} or {@link SCSSProcessingException}, never {@code null}
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public CompletableFuture<String> asStringAsync(CharSequence source, Syntax syntax) {
+    StringInput input = stringInput(source, syntax);
 
-    try(InputStream stdout = asStream(scss, messageConsumer)) {
-      String output = new String(stdout.readAllBytes(), StandardCharsets.UTF_8);
+    return async(() -> asString(input));
+  }
+
+  /**
+   * Compiles the given scss file to a CSS string, like {@link #asString(Path)},
+   * and adds the files loaded by the compilation to the given collection. The
+   * files are added before the handlers are called, so they are known also when
+   * the compilation failed.
+   *
+   * @param scss a SCSS file to compile, cannot be {@code null}
+   * @param loadedFiles a collection to which the loaded files are added, cannot be {@code null}
+   * @return a CSS string, never {@code null}
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   */
+  String asString(Path scss, Collection<Path> loadedFiles) throws IOException {
+    MessageConsumer messageConsumer = new MessageConsumer();
+    Outcome outcome = compile(fileInput(scss), messageConsumer);
 
-      messageConsumer.callHandlers();
+    for(String loadedUrl : outcome.loadedUrls()) {
+      URI uri = URI.create(loadedUrl);
 
-      return output;
+      if("file".equalsIgnoreCase(uri.getScheme())) {
+        loadedFiles.add(Path.of(uri));
+      }
     }
+
+    messageConsumer.callHandlers();
+
+    return outcome.stylesheet().asString();
+  }
+
+  /*
+   * Returns the executor on which work for this compiler runs, which is the
+   * executor configured on its builder, or the default executor.
+   */
+  Executor executor() {
+    return executor;
+  }
+
+  /*
+   * Runs the given task on the executor of this compiler. Compilations the task
+   * performs run on its thread, instead of taking a second thread from the
+   * executor while this one waits.
+   */
+  void execute(Runnable task) {
+    executor.execute(() -> {
+      CURRENT_EXECUTOR.set(executor);
+
+      try {
+        task.run();
+      }
+      finally {
+        CURRENT_EXECUTOR.remove();
+      }
+    });
+  }
+
+  /*
+   * Returns the number of compilations waiting for another compilation to
+   * complete, because the maximum number of concurrent compilations was
+   * reached.
+   */
+  int waitingCompilations() {
+    return permits == null ? 0 : permits.getQueueLength();
   }
 
   /**
@@ -196,6 +434,22 @@ public class SCSSCompiler {
     return URI.create(asURIString(scss));
   }
 
+  /**
+   * Compiles the given source into a {@link URI}. The URI includes the CSS
+   * as base64 encoded text. Relative imports in the source are resolved against
+   * the root of this compiler.
+   *
+   * @param source a stylesheet to compile, cannot be {@code null}
+   * @param syntax the {@link Syntax} of the stylesheet, cannot be {@code null}
+   * @return a {@link URI} containing the base64 encoded CSS, never {@code null}
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public URI asURI(CharSequence source, Syntax syntax) throws IOException {
+    return URI.create(asURIString(source, syntax));
+  }
+
   /**
    * Compiles the given scss file into a valid URI string. The URI includes the CSS
    * as base64 encoded text.
@@ -207,85 +461,826 @@ public class SCSSCompiler {
    * @throws NullPointerException when any argument is {@code null}
    */
   public String asURIString(Path scss) throws IOException {
-    StringBuilder builder = new StringBuilder();
-    MessageConsumer messageConsumer = new MessageConsumer();
+    return asURIString(fileInput(scss));
+  }
+
+  /**
+   * Compiles the given source into a valid URI string. The URI includes the CSS
+   * as base64 encoded text. Relative imports in the source are resolved against
+   * the root of this compiler.
+   *
+   * @param source a stylesheet to compile, cannot be {@code null}
+   * @param syntax the {@link Syntax} of the stylesheet, cannot be {@code null}
+   * @return a URI string containing the base64 encoded CSS, never {@code null}
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public String asURIString(CharSequence source, Syntax syntax) throws IOException {
+    return asURIString(stringInput(source, syntax));
+  }
+
+  private String asURIString(Input input) throws IOException {
+    return compile(input).asDataURI().toString();
+  }
 
-    builder.append("data:text/css;charset=UTF-8;base64,");
+  /**
+   * Compiles the given scss file into a valid URI string asynchronously, on the
+   * executor of this compiler. The URI includes the CSS as base64 encoded text.
+   *
+   * @param scss a SCSS file to compile, cannot be {@code null}
+   * @return a {@link CompletableFuture} which completes with a URI string containing the base64 encoded CSS,
+   *   or exceptionally with an {@link IOException} or {@link SCSSProcessingException}, never {@code null}
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public CompletableFuture<String> asURIStringAsync(Path scss) {
+    FileInput input = fileInput(scss);
 
-    try(
-      InputStream stdout = asStream(scss, messageConsumer);
-      OutputStream outputStream = new ASCIIStringBuilderOutputStream(builder);
-      OutputStream wrap = Base64.getEncoder().wrap(outputStream)
-    ) {
-      stdout.transferTo(wrap);
+    return async(() -> asURIString(input));
+  }
 
-      messageConsumer.callHandlers();
-    }
+  /**
+   * Compiles the given source into a valid URI string asynchronously, on the
+   * executor of this compiler. The URI includes the CSS as base64 encoded text.
+   * Relative imports in the source are resolved against the root of this compiler.
+   *
+   * @param source a stylesheet to compile, cannot be {@code null}
+   * @param syntax the {@link Syntax} of the stylesheet, cannot be {@code null}
+   * @return a {@link CompletableFuture} which completes with a URI string containing the base64 encoded CSS,
+   *   or exceptionally with an {@link IOException} or {@link SCSSProcessingException}, never {@code null}
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public CompletableFuture<String> asURIStringAsync(CharSequence source, Syntax syntax) {
+    StringInput input = stringInput(source, syntax);
 
-    return builder.toString();
+    return async(() -> asURIString(input));
   }
 
   /**
    * Compiles the given scss file into and returns the result as a buffered
-   * stream, while sending any lines output on standard error to the {@code errorLines}
+   * stream, while sending any lines of diagnostic output to the {@code errorLines}
    * consumer.
    * <p>
-   * The {@code errorLines} consumer is called with each line that appears on the
-   * standard output. The last line send will be {@code null} to indicate the end
-   * of the stream was reached.
+   * The {@code errorLines} consumer is called with each line of the formatted
+   * errors, warnings and deprecations reported by the compiler, in the same
+   * format the command line compiler would output them on standard error. The
+   * last line send will be {@code null} to indicate the end of the diagnostics
+   * was reached.
    * <p>
    * The stream should be closed after use.
    *
    * @param scss a SCSS file to compile, cannot be {@code null}
-   * @param errorLines a {@link Consumer} called for each line output on standard error, cannot be {@code null}
+   * @param errorLines a {@link Consumer} called for each line of diagnostic output, cannot be {@code null}
    * @return a buffered {@link InputStream}, never {@code null}
    * @throws IOException when an IO error occurred
    * @throws SCSSProcessingException when a compilation or syntax error is detected
    * @throws NullPointerException when any argument is {@code null}
    */
   public InputStream asStream(Path scss, Consumer<String> errorLines) throws IOException {
-    Objects.requireNonNull(scss, "scss");
+    return asStream(fileInput(scss), errorLines);
+  }
+
+  /**
+   * Compiles the given source and returns the result as a buffered stream,
+   * while sending any lines of diagnostic output to the {@code errorLines}
+   * consumer. Relative imports in the source are resolved against the root of
+   * this compiler.
+   * <p>
+   * See {@link #asStream(Path, Consumer)} for details on the diagnostic output.
+   *
+   * @param source a stylesheet to compile, cannot be {@code null}
+   * @param syntax the {@link Syntax} of the stylesheet, cannot be {@code null}
+   * @param errorLines a {@link Consumer} called for each line of diagnostic output, cannot be {@code null}
+   * @return a buffered {@link InputStream}, never {@code null}
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public InputStream asStream(CharSequence source, Syntax syntax, Consumer<String> errorLines) throws IOException {
+    return asStream(stringInput(source, syntax), errorLines);
+  }
+
+  private InputStream asStream(Input input, Consumer<String> errorLines) throws IOException {
     Objects.requireNonNull(errorLines, "errorLines");
 
-    if(TEMP_DIRECTORY == null) {
-      throw new IllegalStateException("Dart SCSS compiler could not be initialized, cannot compile SCSS file: " + scss);
+    MessageConsumer messageConsumer = new MessageConsumer();
+    CompiledStylesheet stylesheet = compile(input, messageConsumer).stylesheet();
+
+    messageConsumer.replay(errorLines);
+
+    return new ByteArrayInputStream(stylesheet.bytes());
+  }
+
+  /**
+   * Compiles the given scss file and writes the CSS, encoded as UTF-8, to the
+   * given channel. Nothing is written when a compilation error is detected. The
+   * channel is not closed.
+   *
+   * @param scss a SCSS file to compile, cannot be {@code null}
+   * @param channel a {@link WritableByteChannel} to write the CSS to, cannot be {@code null}
+   * @return the number of bytes written, never negative
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public int compileTo(Path scss, WritableByteChannel channel) throws IOException {
+    return compileTo(fileInput(scss), channel);
+  }
+
+  /**
+   * Compiles the given source and writes the CSS, encoded as UTF-8, to the
+   * given channel. Nothing is written when a compilation error is detected. The
+   * channel is not closed. Relative imports in the source are resolved against
+   * the root of this compiler.
+   *
+   * @param source a stylesheet to compile, cannot be {@code null}
+   * @param syntax the {@link Syntax} of the stylesheet, cannot be {@code null}
+   * @param channel a {@link WritableByteChannel} to write the CSS to, cannot be {@code null}
+   * @return the number of bytes written, never negative
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public int compileTo(CharSequence source, Syntax syntax, WritableByteChannel channel) throws IOException {
+    return compileTo(stringInput(source, syntax), channel);
+  }
+
+  private int compileTo(Input input, WritableByteChannel channel) throws IOException {
+    Objects.requireNonNull(channel, "channel");
+
+    ByteBuffer buffer = compile(input).asByteBuffer();
+    int size = buffer.remaining();
+
+    while(buffer.hasRemaining()) {
+      channel.write(buffer);
     }
 
-    Process process = createProcess(root, scss);
+    return size;
+  }
+
+  /**
+   * Compiles the given scss file and writes the CSS to the given output file.
+   * The output file is replaced atomically, and only when its content changes,
+   * so an unchanged output keeps its modification time. Missing parent
+   * directories are created. The output is left untouched when a compilation
+   * error is detected.
+   *
+   * @param scss a SCSS file to compile, cannot be {@code null}
+   * @param output the CSS file to write, cannot be {@code null}
+   * @return {@code true} if the output was written, or {@code false} if it already contained the CSS
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public boolean compileTo(Path scss, Path output) throws IOException {
+    return compileTo(fileInput(scss), output);
+  }
+
+  /**
+   * Compiles the given source and writes the CSS to the given output file.
+   * Relative imports in the source are resolved against the root of this
+   * compiler.
+   * <p>
+   * See {@link #compileTo(Path, Path)} for details on how the output is written.
+   *
+   * @param source a stylesheet to compile, cannot be {@code null}
+   * @param syntax the {@link Syntax} of the stylesheet, cannot be {@code null}
+   * @param output the CSS file to write, cannot be {@code null}
+   * @return {@code true} if the output was written, or {@code false} if it already contained the CSS
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public boolean compileTo(CharSequence source, Syntax syntax, Path output) throws IOException {
+    return compileTo(stringInput(source, syntax), output);
+  }
+
+  private boolean compileTo(Input input, Path output) throws IOException {
+    Objects.requireNonNull(output, "output");
+
+    return writeIfChanged(output, compile(input).bytes());
+  }
+
+  /**
+   * Compiles the given scss file to a buffer containing the CSS encoded as
+   * UTF-8. A direct buffer is suitable for writing to channels repeatedly, for
+   * example when serving the CSS to many clients, as it is not copied for each
+   * write.
+   * <p>
+   * The CSS is received from the compiler already encoded, so either kind of
+   * buffer is an exactly sized copy of the received bytes; nothing is encoded.
+   * The returned buffer is owned by the caller, and can be modified.
+   *
+   * @param scss a SCSS file to compile, cannot be {@code null}
+   * @param direct whether to return a direct buffer, otherwise a heap buffer is returned
+   * @return a {@link ByteBuffer} positioned at the start of the CSS, never {@code null}
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public ByteBuffer asByteBuffer(Path scss, boolean direct) throws IOException {
+    return asByteBuffer(fileInput(scss), direct);
+  }
+
+  /**
+   * Compiles the given source to a buffer containing the CSS encoded as UTF-8.
+   * Relative imports in the source are resolved against the root of this
+   * compiler.
+   * <p>
+   * See {@link #asByteBuffer(Path, boolean)} for details on the buffer returned.
+   *
+   * @param source a stylesheet to compile, cannot be {@code null}
+   * @param syntax the {@link Syntax} of the stylesheet, cannot be {@code null}
+   * @param direct whether to return a direct buffer, otherwise a heap buffer is returned
+   * @return a {@link ByteBuffer} positioned at the start of the CSS, never {@code null}
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public ByteBuffer asByteBuffer(CharSequence source, Syntax syntax, boolean direct) throws IOException {
+    return asByteBuffer(stringInput(source, syntax), direct);
+  }
+
+  private ByteBuffer asByteBuffer(Input input, boolean direct) throws IOException {
+    CompiledStylesheet stylesheet = compile(input);
+
+    // The stylesheet may be shared or cached, so the caller gets its own copy:
+    return direct
+      ? ByteBuffer.allocateDirect(stylesheet.size()).put(stylesheet.bytes()).flip()
+      : ByteBuffer.wrap(stylesheet.bytes().clone());
+  }
+
+  /**
+   * Compiles many SCSS files concurrently, writing the CSS of each file to the
+   * output file it maps to. Output files are written atomically, and only when
+   * their content changes, so files of which the CSS is unchanged keep their
+   * modification time. Missing parent directories are created.
+   * <p>
+   * The files are compiled on the executor of this compiler by its engine, using
+   * as many processes as it allows. When this compiler has a {@link SCSSCache}, files
+   * which did not change since they were last compiled are served from the
+   * cache; with a cache directory, this also holds across JVMs.
+   * <p>
+   * Errors, warnings and deprecations are returned with the result of each file
+   * instead of being passed to the handlers of this compiler. A file failing to
+   * compile does not stop the other files from being compiled.
+   *
+   * @param inputToOutput a map of SCSS files to the CSS files to write, cannot be {@code null} or contain {@code null}s
+   * @return a map of SCSS files to their {@link CompileResult}, in the iteration order of the given map, never {@code null}
+   * @throws IOException when interrupted while waiting for the compilations
+   * @throws NullPointerException when {@code inputToOutput} is or contains {@code null}
+   */
+  public Map<Path, CompileResult> compileAll(Map<Path, Path> inputToOutput) throws IOException {
+    Map<Path, CompletableFuture<CompileResult>> futures = new LinkedHashMap<>();
+    Semaphore permits = new Semaphore(engine.getMaxProcesses() * engine.getMaxCompilationsPerProcess());
+    AtomicBoolean cancelled = new AtomicBoolean();
 
-    EXECUTOR.execute(() -> {
-      try(BufferedReader reader = process.errorReader(StandardCharsets.UTF_8)) {
-        for(;;) {
-          String line = reader.readLine();
+    inputToOutput.forEach((input, output) -> {
+      Objects.requireNonNull(input, "input");
+      Objects.requireNonNull(output, "output");
 
-          errorLines.accept(line);  // purposely sending null to signal to consumer that EOF was reached
+      // Compilations beyond the capacity of the engine wait here, rather than risk timing out acquiring a process:
+      futures.put(input, CompletableFuture.supplyAsync(() -> {
+        permits.acquireUninterruptibly();
 
-          if(line == null) {
-            break;
-          }
+        try {
+          return cancelled.get() ? null : compileFile(input, output);
         }
+        finally {
+          permits.release();
+        }
+      }, this::execute));
+    });
+
+    try {
+      CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).get();
+    }
+    catch(InterruptedException e) {
+      cancelled.set(true);
+      Thread.currentThread().interrupt();
+
+      throw new InterruptedIOException("Interrupted while compiling " + inputToOutput.size() + " files");
+    }
+    catch(ExecutionException e) {
+      throw new IllegalStateException(e.getCause());  // compileFile does not throw
+    }
+
+    Map<Path, CompileResult> results = new LinkedHashMap<>();
+
+    futures.forEach((input, future) -> results.put(input, future.join()));
+
+    return Collections.unmodifiableMap(results);
+  }
+
+  private CompileResult compileFile(Path input, Path output) {
+    MessageConsumer messageConsumer = new MessageConsumer();
+    FileInput fileInput = fileInput(input);
+    Trace trace = Trace.start(listener, fileInput);
+    CompileResult.Status status;
+
+    try {
+      Outcome outcome = compile(fileInput, messageConsumer, trace);
+
+      if(outcome.failure() != null) {
+        status = CompileResult.Status.FAILED;
       }
-      catch(IOException e) {
-        throw new IllegalStateException("IOException while compiling: " + scss, e);
+      else {
+        status = writeIfChanged(output, outcome.stylesheet().bytes()) ? CompileResult.Status.WRITTEN : CompileResult.Status.UNCHANGED;
       }
-    });
+    }
+    catch(IOException | RuntimeException e) {
+      LOGGER.log(Level.DEBUG, "Unable to compile " + input + " to " + output, e);
+
+      messageConsumer.error("Error: " + e.getMessage());
+      status = CompileResult.Status.FAILED;
+    }
+
+    return new CompileResult(input, output, status, messageConsumer.errors, messageConsumer.warnings, messageConsumer.deprecations, trace.stats());
+  }
+
+  private static boolean writeIfChanged(Path target, byte[] bytes) throws IOException {
+    if(Files.isRegularFile(target) && Files.size(target) == bytes.length && Arrays.equals(Files.readAllBytes(target), bytes)) {
+      return false;
+    }
+
+    writeAtomically(target, bytes);
 
-    return new BufferedInputStream(process.getInputStream());
+    return true;
   }
 
-  private static Process createProcess(Path root, Path scss) throws IOException {
-    List<String> command = new ArrayList<>();
+  private static void writeAtomically(Path target, byte[] bytes) throws IOException {
+    Path directory = target.toAbsolutePath().getParent();
 
-    switch(OS) {
-      case WINDOWS -> command.addAll(List.of("cmd.exe", "/c", TEMP_DIRECTORY.resolve("dart-sass/sass.bat").toString()));
-      default -> command.addAll(List.of("/bin/bash", TEMP_DIRECTORY.resolve("dart-sass/sass").toString()));
+    Files.createDirectories(directory);
+
+    Path temp = Files.createTempFile(directory, target.getFileName().toString() + ".", ".tmp");
+
+    try {
+      Files.write(temp, bytes);
+
+      try {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch(AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private <T> CompletableFuture<T> async(Callable<T> task) {
+    AsyncTask<T> future = new AsyncTask<>();
+
+    execute(() -> future.run(task));
+
+    return future;
+  }
+
+  /*
+   * A future which interrupts the thread running its task when cancelled, so
+   * the compilation is stopped when nobody else is waiting for it.
+   */
+  private static final class AsyncTask<T> extends CompletableFuture<T> {
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Thread thread;  // guarded by lock, set while the task runs
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+      lock.lock();
+
+      try {
+        if(cancelled && thread != null) {
+          thread.interrupt();
+        }
+      }
+      finally {
+        lock.unlock();
+      }
+
+      return cancelled;
+    }
+
+    void run(Callable<T> task) {
+      if(!setThread(Thread.currentThread())) {
+        return;
+      }
+
+      try {
+        complete(task.call());
+      }
+      catch(Throwable t) {
+        completeExceptionally(t);
+      }
+      finally {
+        setThread(null);
+      }
+    }
+
+    private boolean setThread(Thread thread) {
+      lock.lock();
+
+      try {
+        this.thread = thread;
+
+        if(thread == null && isCancelled()) {
+          Thread.interrupted();  // clears an interrupt which may have arrived after the task completed
+        }
+
+        return !isDone();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /*
+   * Follows a single compilation, reporting its progress to the listener, if
+   * any, and collecting its statistics. Progress reported after the end of
+   * the compilation is ignored; this happens when the caller stopped waiting
+   * for a compilation which continues for other callers sharing it.
+   */
+  private static final class Trace implements EmbeddedCompiler.Probe {
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private final long id = IDS.incrementAndGet();
+    private final CompileListener listener;  // null when there is none
+    private final long startNanos = System.nanoTime();
+
+    private volatile Duration cpuTime = Duration.ZERO;
+    private volatile CompileStats stats;  // set when the compilation ended
+
+    private Trace(CompileListener listener) {
+      this.listener = listener;
+    }
+
+    static Trace start(CompileListener listener, Input input) {
+      Trace trace = new Trace(listener);
+
+      trace.callListener(l -> l.started(trace.id, input.toString()));
+
+      return trace;
+    }
+
+    void engineAcquired() {
+      callListener(l -> l.engineAcquired(id));
+    }
+
+    @Override
+    public void firstByte() {
+      callListener(l -> l.firstByte(id));
+    }
+
+    @Override
+    public void cpuTime(Duration cpuTime) {
+      this.cpuTime = cpuTime;
+    }
+
+    /*
+     * Ends the compilation with the given outcome, or when it could not be
+     * completed, with the given exception:
+     */
+    void end(Outcome outcome, Exception exception) {
+      List<LogEvent> logEvents = outcome == null ? List.of() : outcome.logEvents();
+      CompileStats stats = new CompileStats(
+        Duration.ofNanos(System.nanoTime() - startNanos),
+        cpuTime,
+        outcome == null ? 0 : outcome.stylesheet().size(),
+        outcome == null ? 0 : outcome.loadedUrls().size(),
+        outcome == null || outcome.failure() != null ? 1 : 0,
+        (int)logEvents.stream().filter(e -> e.type() == LogEventType.WARNING).count(),
+        (int)logEvents.stream().filter(e -> e.type() == LogEventType.DEPRECATION_WARNING).count()
+      );
+      Exception cause = exception != null ? exception
+        : outcome.failure() != null ? new SCSSProcessingException(outcome.failure())
+        : null;
+
+      callListener(l -> {
+        if(cause == null) {
+          l.completed(id, stats);
+        }
+        else {
+          l.failed(id, stats, cause);
+        }
+      });
+
+      this.stats = stats;
+    }
+
+    CompileStats stats() {
+      return stats;
+    }
+
+    private void callListener(Consumer<CompileListener> callback) {
+      if(listener != null && stats == null) {
+        try {
+          callback.accept(listener);
+        }
+        catch(RuntimeException e) {
+          LOGGER.log(Level.WARNING, "Compile listener " + listener + " failed for compilation " + id, e);
+        }
+      }
+    }
+  }
+
+  private static FileInput fileInput(Path scss) {
+    return new FileInput(Objects.requireNonNull(scss, "scss"));
+  }
+
+  private StringInput stringInput(CharSequence source, Syntax syntax) {
+    return new StringInput(Objects.requireNonNull(source, "source").toString(), Objects.requireNonNull(syntax, "syntax"), root.toAbsolutePath());
+  }
+
+  private Outcome compile(Input input, MessageConsumer messageConsumer) throws IOException {
+    return compile(input, messageConsumer, listener == null ? null : Trace.start(listener, input));
+  }
+
+  private Outcome compile(Input input, MessageConsumer messageConsumer, Trace trace) throws IOException {
+    CompileEvent event = new CompileEvent();
+    long startNanos = System.nanoTime();
+    Outcome outcome;
+
+    event.begin();
+
+    try {
+      outcome = outcomeOf(input, trace);
+    }
+    catch(IOException | RuntimeException e) {
+      METRICS.errored(System.nanoTime() - startNanos);
+      commit(event, input, null);
+
+      if(trace != null) {
+        trace.end(null, e);
+      }
+
+      throw e;
+    }
+
+    if(precompress) {
+      outcome.stylesheet().gzippedBytes();  // memoized, so also for other holders of the stylesheet, like the cache
+    }
+
+    if(outcome.failure() == null) {
+      METRICS.succeeded(System.nanoTime() - startNanos);
+    }
+    else {
+      METRICS.failed(System.nanoTime() - startNanos);
+    }
+
+    report(input, outcome, messageConsumer);
+    commit(event, input, outcome);
+
+    if(trace != null) {
+      trace.end(outcome, null);
+    }
+
+    return outcome;
+  }
+
+  private static void commit(CompileEvent event, Input input, Outcome outcome) {
+    if(event.shouldCommit()) {
+      event.entry = input.toString();
+      event.outputBytes = outcome == null ? 0 : outcome.stylesheet().size();
+      event.loadedFiles = outcome == null ? 0 : outcome.loadedUrls().size();
+      event.outcome = outcome == null ? "error" : outcome.failure() == null ? "succeeded" : "failed";
+      event.commit();
+    }
+  }
+
+  private Outcome outcomeOf(Input input, Trace trace) throws IOException {
+    if(input instanceof FileInput fileInput && !Files.isRegularFile(fileInput.path())) {
+      return new Outcome(EMPTY, List.of(), List.of(fileInput.path().toAbsolutePath().toUri().toString()), "Error reading " + fileInput.path() + ": Cannot open file.");
+    }
+
+    if(input instanceof FileInput fileInput) {
+      input = new FileInput(fileInput.path().toAbsolutePath());
+    }
+
+    CompileRequest request = new CompileRequest(input, importers, List.of(root.toAbsolutePath()), functions);
+
+    /*
+     * Concurrent compilations of the same request are coalesced into one, except
+     * when Java functions are involved, as these may give different results for
+     * different callers. The compilation runs on the executor of this compiler,
+     * or directly on the calling thread when it already belongs to it:
+     */
+    return functions.isEmpty()
+      ? FLIGHTS.execute(new Flight(request, engine, cache, timeout), CURRENT_EXECUTOR.get() == executor ? Runnable::run : executor, () -> compile(request, trace))
+      : compile(request, trace);
+  }
+
+  /*
+   * The trace, if any, is the trace of the caller whose compilation is
+   * performed; callers sharing it have their own traces, which only see the
+   * start and end of the compilation.
+   */
+  private Outcome compile(CompileRequest request, Trace trace) throws IOException {
+    SCSSCache.Key key = cache == null ? null : SCSSCache.keyOf(request);
+
+    if(key != null) {
+      SCSSCache.Result cachedResult = cache.get(key);
+
+      METRICS.cacheLookup(cachedResult != null);
+
+      if(cachedResult != null) {
+        return new Outcome(cachedResult.stylesheet(), cachedResult.logEvents(), cachedResult.loadedUrls(), null);
+      }
     }
 
-    command.addAll(List.of("--no-source-map", "--load-path", root.toString(), "--style", "compressed", scss.toString()));
+    long startMillis = System.currentTimeMillis();
+    EmbeddedCompiler.Result result;
+    boolean queued = true;
+
+    METRICS.queued(1);
+
+    try {
+      acquirePermit();
+
+      try(SCSSEngine.Lease lease = engine.acquire()) {
+        queued = false;
+        METRICS.queued(-1);
+        METRICS.active(1);
+
+        if(trace != null) {
+          trace.engineAcquired();
+        }
+
+        try {
+          result = lease.compiler().compile(request, timeout, trace);
+        }
+        finally {
+          METRICS.active(-1);
+        }
+      }
+      finally {
+        if(permits != null) {
+          permits.release();
+        }
+      }
+    }
+    finally {
+      if(queued) {
+        METRICS.queued(-1);
+      }
+    }
+
+    CompileResponse response = result.response();
+
+    if(!response.isSuccess()) {
+      return new Outcome(EMPTY, result.logEvents(), response.loadedUrls(), response.failure());
+    }
+
+    CompiledStylesheet stylesheet = new CompiledStylesheet(response.css());
+
+    METRICS.produced(stylesheet.size());
+
+    if(key != null) {
+      cache.put(key, new SCSSCache.Result(stylesheet, result.logEvents(), response.loadedUrls()), startMillis);
+    }
+
+    return new Outcome(stylesheet, result.logEvents(), response.loadedUrls(), null);
+  }
+
+  private void acquirePermit() throws IOException {
+    if(permits != null) {
+      try {
+        permits.acquire();
+      }
+      catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+
+        throw new InterruptedIOException("Interrupted while waiting for other compilations to complete");
+      }
+    }
+  }
+
+  private static void report(Input input, Outcome outcome, MessageConsumer messageConsumer) {
+    DiagnosticsEvent diagnosticsEvent = new DiagnosticsEvent();
+    int warnings = 0;
+    int deprecations = 0;
+    long messageLength = 0;
+
+    diagnosticsEvent.begin();
+
+    for(LogEvent event : outcome.logEvents()) {
+      switch(event.type()) {
+        case WARNING -> {
+          messageConsumer.warning(event.formatted());
+          warnings++;
+        }
+        case DEPRECATION_WARNING -> {
+          messageConsumer.deprecation(event.formatted());
+          deprecations++;
+        }
+        case DEBUG -> LOGGER.log(Level.DEBUG, event.formatted());
+      }
+
+      messageLength += event.formatted().length();
+    }
+
+    if(outcome.failure() != null) {
+      messageConsumer.error(outcome.failure());
+      messageLength += outcome.failure().length();
+    }
+
+    if(diagnosticsEvent.shouldCommit() && (outcome.failure() != null || !outcome.logEvents().isEmpty())) {
+      diagnosticsEvent.entry = input.toString();
+      diagnosticsEvent.errors = outcome.failure() == null ? 0 : 1;
+      diagnosticsEvent.warnings = warnings;
+      diagnosticsEvent.deprecations = deprecations;
+      diagnosticsEvent.messageLength = messageLength;
+      diagnosticsEvent.commit();
+    }
+  }
+
+  static Process createProcess(List<String> arguments) throws IOException {
+    List<String> command = new ArrayList<>(sassCommand());
+
+    command.addAll(arguments);
 
     ProcessBuilder processBuilder = new ProcessBuilder(command);
+    ProcessStartEvent event = new ProcessStartEvent();
+    long startNanos = System.nanoTime();
+    Process process;
+
+    event.begin();
+
+    try {
+      process = processBuilder.start();
+    }
+    catch(IOException e) {
+      commit(event, command, null);
+
+      throw e;
+    }
+
+    METRICS.spawned(System.nanoTime() - startNanos);
+    commit(event, command, process);
+
+    return ProcessReaper.register(process);
+  }
+
+  private static void commit(ProcessStartEvent event, List<String> command, Process process) {
+    if(event.shouldCommit()) {
+      event.command = String.join(" ", command);
+      event.pid = process == null ? -1 : process.pid();
+      event.outcome = process == null ? "failed" : "started";
+      event.commit();
+    }
+  }
+
+  /*
+   * The sass wrapper scripts only start the bundled Dart runtime with the
+   * sass snapshot; starting the runtime directly saves starting a shell
+   * for each process. Only when the bundle has an unexpected layout are the
+   * wrapper scripts used.
+   */
+  private static List<String> resolveCommand(Path directory) {
+    Path src = directory.resolve("dart-sass/src");
+    Path dart = src.resolve(OS == OperatingSystem.WINDOWS ? "dart.exe" : "dart");
+    Path snapshot = src.resolve("sass.snapshot");
+
+    if(Files.isRegularFile(dart) && Files.isRegularFile(snapshot)) {
+      return List.of(dart.toString(), snapshot.toString());
+    }
+
+    LOGGER.log(Level.DEBUG, "Dart runtime or sass snapshot not found in " + src + ", using wrapper script");
+
+    return wrapperCommand(directory);
+  }
+
+  private static List<String> wrapperCommand(Path directory) {
+    return switch(OS) {
+      case WINDOWS -> List.of("cmd.exe", "/c", directory.resolve("dart-sass/sass.bat").toString());
+      default -> List.of("/bin/bash", directory.resolve("dart-sass/sass").toString());
+    };
+  }
 
-    return processBuilder.start();
+  /**
+   * Returns the command to start the Dart SCSS compiler, waiting for the
+   * compiler to be prepared if needed.
+   *
+   * @return a command, never {@code null}
+   * @throws IOException when the compiler could not be prepared
+   */
+  static List<String> sassCommand() throws IOException {
+    return awaitInstallation().sassCommand();
+  }
+
+  /**
+   * Returns the command to start the Dart SCSS compiler through the wrapper script
+   * that comes with it, waiting for the compiler to be prepared if needed.
+   *
+   * @return a command, never {@code null}
+   * @throws IOException when the compiler could not be prepared
+   */
+  static List<String> wrapperCommand() throws IOException {
+    return wrapperCommand(awaitInstallation().directory());
   }
 
   private static OperatingSystem getOS() {
@@ -306,70 +1301,287 @@ public class SCSSCompiler {
     throw new IllegalStateException("Unsupported OS type: " + os);
   }
 
-  private static void deleteDirectoryRecursively(Path directory) throws IOException {
-    try(Stream<Path> stream = Files.walk(directory)) {
-      for(Iterator<Path> iterator = stream.sorted(Comparator.reverseOrder()).iterator(); iterator.hasNext();) {
-        Files.delete(iterator.next());
+  /**
+   * Builder for {@link SCSSCompiler}s.
+   */
+  public static final class Builder {
+    private final Path root;
+
+    private Consumer<List<String>> errorsHandler;
+    private Consumer<List<String>> warningsHandler;
+    private Consumer<List<String>> deprecationsHandler;
+    private SCSSEngine engine;
+    private List<Importer> importers = List.of();
+    private List<HostFunction> functions = List.of();
+    private SCSSCache cache;
+    private Executor executor;
+    private int maxConcurrentCompilations;
+    private Duration timeout;
+    private boolean precompress;
+    private CompileListener listener;
+
+    Builder(Path root) {
+      this.root = Objects.requireNonNull(root, "root");
+    }
+
+    /**
+     * Sets the handler for errors encountered. Setting {@code null} selects the
+     * default handler, which throws an {@link SCSSProcessingException} when any
+     * errors are encountered.
+     *
+     * @param errorsHandler a handler for errors encountered, can be {@code null}
+     * @return this {@link Builder}, never {@code null}
+     */
+    public Builder errorsHandler(Consumer<List<String>> errorsHandler) {
+      this.errorsHandler = errorsHandler;
+
+      return this;
+    }
+
+    /**
+     * Sets the handler for warnings encountered. Setting {@code null} selects the
+     * default handler, which logs warnings at level {@link Level#WARNING}.
+     *
+     * @param warningsHandler a handler for warnings encountered, can be {@code null}
+     * @return this {@link Builder}, never {@code null}
+     */
+    public Builder warningsHandler(Consumer<List<String>> warningsHandler) {
+      this.warningsHandler = warningsHandler;
+
+      return this;
+    }
+
+    /**
+     * Sets the handler for deprecations encountered. Setting {@code null} selects the
+     * default handler, which logs deprecations at level {@link Level#INFO}.
+     *
+     * @param deprecationsHandler a handler for deprecations encountered, can be {@code null}
+     * @return this {@link Builder}, never {@code null}
+     */
+    public Builder deprecationsHandler(Consumer<List<String>> deprecationsHandler) {
+      this.deprecationsHandler = deprecationsHandler;
+
+      return this;
+    }
+
+    /**
+     * Sets the {@link SCSSEngine} which provides the compiler processes. Setting
+     * {@code null} selects the {@link SCSSEngine#getDefault() default engine}.
+     *
+     * @param engine an {@link SCSSEngine}, can be {@code null}
+     * @return this {@link Builder}, never {@code null}
+     */
+    public Builder engine(SCSSEngine engine) {
+      this.engine = engine;
+
+      return this;
+    }
+
+    /**
+     * Sets the {@link Importer}s used to resolve imports which cannot be
+     * resolved relative to the importing stylesheet. The importers are tried
+     * in order, before trying to resolve the import against the root of the
+     * compiler.
+     *
+     * @param importers a list of {@link Importer}s, cannot be {@code null} or contain {@code null}s
+     * @return this {@link Builder}, never {@code null}
+     * @throws NullPointerException when {@code importers} is or contains {@code null}
+     */
+    public Builder importers(List<Importer> importers) {
+      this.importers = List.copyOf(importers);
+
+      return this;
+    }
+
+    /**
+     * Sets the Sass functions implemented in Java, keyed by their Sass signature,
+     * like {@code "brand-color($name, $shade: 500)"}. The functions can be called
+     * from any stylesheet compiled by the compiler, and receive one argument for
+     * each parameter in their signature, with defaults applied. Arguments declared
+     * with {@code ...} are received as a {@link SassValue.SassList}.
+     * <p>
+     * Functions are called on a virtual thread, and can be called concurrently
+     * by different compilations. When a function throws an exception, the
+     * compilation fails with the message of the exception.
+     *
+     * @param functions a map of signatures to function implementations, cannot be {@code null} or contain {@code null}s
+     * @return this {@link Builder}, never {@code null}
+     * @throws NullPointerException when {@code functions} is or contains {@code null}
+     * @throws IllegalArgumentException when a signature is invalid
+     */
+    public Builder functions(Map<String, Function<List<SassValue>, SassValue>> functions) {
+      this.functions = functions.entrySet().stream()
+        .map(e -> new HostFunction(e.getKey(), e.getValue()))
+        .toList();
+
+      return this;
+    }
+
+    /**
+     * Sets the {@link SCSSCache} in which the results of compilations are
+     * cached. Setting {@code null}, the default, disables caching.
+     *
+     * @param cache an {@link SCSSCache}, can be {@code null}
+     * @return this {@link Builder}, never {@code null}
+     */
+    public Builder cache(SCSSCache cache) {
+      this.cache = cache;
+
+      return this;
+    }
+
+    /**
+     * Sets the {@link Executor} on which asynchronous compilations, and the
+     * compilations of {@link SCSSCompiler#compileAll(Map)}, are run. An {@link
+     * SCSSWatcher} using the compiler runs its background compilations on it
+     * as well, and occupies one of its threads to watch for changes for as long
+     * as it is open. Setting {@code null}, the default, runs each of these on a
+     * new virtual thread.
+     *
+     * @param executor an {@link Executor}, can be {@code null}
+     * @return this {@link Builder}, never {@code null}
+     */
+    public Builder executor(Executor executor) {
+      this.executor = executor;
+
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of compilations the compiler runs at the same time.
+     * Further compilations wait, in the order they were requested, until another
+     * compilation completes. Compilations served from the cache, or shared with
+     * a compilation already in progress, do not count towards this limit.
+     * Setting 0, the default, leaves the limit to the engine.
+     *
+     * @param maxConcurrentCompilations the maximum number of compilations, or 0 for no limit
+     * @return this {@link Builder}, never {@code null}
+     * @throws IllegalArgumentException when {@code maxConcurrentCompilations} is negative
+     */
+    public Builder maxConcurrentCompilations(int maxConcurrentCompilations) {
+      if(maxConcurrentCompilations < 0) {
+        throw new IllegalArgumentException("maxConcurrentCompilations cannot be negative: " + maxConcurrentCompilations);
       }
+
+      this.maxConcurrentCompilations = maxConcurrentCompilations;
+
+      return this;
+    }
+
+    /**
+     * Sets the maximum time a compilation may take once a compiler process is
+     * available. When it takes longer, the compiler process is destroyed, and
+     * the compilation fails with an {@link IOException}. Setting {@code null},
+     * the default, allows compilations to take any amount of time.
+     *
+     * @param timeout a {@link Duration}, can be {@code null}
+     * @return this {@link Builder}, never {@code null}
+     * @throws IllegalArgumentException when {@code timeout} is zero or negative
+     */
+    public Builder timeout(Duration timeout) {
+      if(timeout != null && (timeout.isNegative() || timeout.isZero())) {
+        throw new IllegalArgumentException("timeout must be positive: " + timeout);
+      }
+
+      this.timeout = timeout;
+
+      return this;
+    }
+
+    /**
+     * Sets whether the CSS is compressed as part of the compilation, so
+     * {@link CompiledStylesheet#encodedFor(String) serving} a compiled or
+     * cached stylesheet does no compression work. Otherwise, the CSS is
+     * compressed when a compressed body is first requested. Defaults to
+     * {@code false}.
+     *
+     * @param precompress whether to compress the CSS as part of the compilation
+     * @return this {@link Builder}, never {@code null}
+     */
+    public Builder precompress(boolean precompress) {
+      this.precompress = precompress;
+
+      return this;
+    }
+
+    /**
+     * Sets the {@link CompileListener} which receives the progress and
+     * {@link CompileStats statistics} of each compilation. Setting {@code null},
+     * the default, disables listening, so no statistics are collected unless
+     * {@link SCSSCompiler#compileAll(Map) compiling many files}.
+     *
+     * @param listener a {@link CompileListener}, can be {@code null}
+     * @return this {@link Builder}, never {@code null}
+     */
+    public Builder listener(CompileListener listener) {
+      this.listener = listener;
+
+      return this;
     }
-  }
 
-  class MessageConsumer implements Consumer<String> {
-    private static final Pattern PATTERN = Pattern.compile("(DEPRECATION WARNING|WARNING|ERROR).*:.*", Pattern.CASE_INSENSITIVE);
+    /**
+     * Creates a new {@link SCSSCompiler} with the settings of this builder.
+     *
+     * @return a new {@link SCSSCompiler}, never {@code null}
+     */
+    public SCSSCompiler build() {
+      return new SCSSCompiler(this);
+    }
+  }
 
-    private final StringBuilder builder = new StringBuilder();
-    private final Semaphore busy = new Semaphore(0);
+  class MessageConsumer {
     private final List<String> errors = new ArrayList<>();
     private final List<String> warnings = new ArrayList<>();
     private final List<String> deprecations = new ArrayList<>();
+    private final List<String> messages = new ArrayList<>();
 
-    private String type;
-
-    @Override
-    public void accept(String text) {
-      synchronized(builder) {
-        if(text == null) {
-          finish();
-          busy.release();
-        }
-        else {
-          Matcher matcher = PATTERN.matcher(text);
+    void error(String formatted) {
+      add(errors, formatted, "\n");
+    }
 
-          if(matcher.matches()) {
-            finish();
+    void warning(String formatted) {
+      add(warnings, formatted, "\n\n");
+    }
 
-            type = matcher.group(1);
-          }
+    void deprecation(String formatted) {
+      add(deprecations, formatted, "\n\n");
+    }
 
-          builder.append(text).append("\n");
-        }
+    /**
+     * Sends all messages line by line to the given consumer, followed by
+     * a {@code null} to signal the end of the messages.
+     *
+     * @param lines a {@link Consumer} to send lines to, cannot be {@code null}
+     */
+    void replay(Consumer<String> lines) {
+      for(String message : messages) {
+        message.lines().forEach(lines);
       }
+
+      lines.accept(null);
     }
 
     public void callHandlers() {
-      busy.acquireUninterruptibly();
-
-      synchronized(builder) {
-        deprecationsHandler.accept(deprecations);
-        warningsHandler.accept(warnings);
-        errorsHandler.accept(errors);
-      }
+      deprecationsHandler.accept(deprecations);
+      warningsHandler.accept(warnings);
+      errorsHandler.accept(errors);
     }
 
-    private void finish() {
-      if(!builder.isEmpty()) {
-        if("ERROR".equalsIgnoreCase(type)) {
-          errors.add(builder.toString());
-        }
-        else if("WARNING".equalsIgnoreCase(type)) {
-          warnings.add(builder.toString());
-        }
-        else {
-          deprecations.add(builder.toString());
-        }
+    /*
+     * Formats messages the same way the command line compiler does; warnings
+     * are followed by a blank line, errors are not.
+     */
+    private void add(List<String> list, String formatted, String terminator) {
+      int end = formatted.length();
 
-        builder.setLength(0);
+      while(end > 0 && formatted.charAt(end - 1) == '\n') {
+        end--;
       }
+
+      String message = formatted.substring(0, end) + terminator;
+
+      list.add(message);
+      messages.add(message);
     }
   }
 }
@@ -0,0 +1,513 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of Dart Sass compiler processes which can be shared by
+ * multiple {@link SCSSCompiler}s. Processes are started on demand, up to a
+ * maximum, and are reused for many compilations. Processes which have been
+ * idle for too long are stopped, as long as the pool keeps at least its
+ * minimum number of processes.
+ * <p>
+ * Each process handles multiple compilations concurrently. New compilations
+ * are preferably sent to a process which is already busy, so additional
+ * processes are only started when the running processes have reached their
+ * maximum number of concurrent compilations.
+ * <p>
+ * When all processes are fully busy, callers wait in line until a process becomes
+ * available or the acquire timeout expires.
+ */
+public final class SCSSEngine implements AutoCloseable {
+  private static final Logger LOGGER = System.getLogger(SCSSEngine.class.getName());
+  private static final Set<SCSSEngine> OPEN_ENGINES = ConcurrentHashMap.newKeySet();
+  private static final Object DEFAULT_LOCK = new Object();
+
+  private static SCSSEngine defaultEngine;
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(SCSSEngine::closeAll));
+  }
+
+  private final int minProcesses;
+  private final int maxProcesses;
+  private final int maxCompilationsPerProcess;
+  private final Duration idleTimeout;
+  private final Duration acquireTimeout;
+  private final EmbeddedCompiler.ProcessFactory processFactory;
+  private final Executor executor;
+  private final Semaphore permits;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition closedCondition = lock.newCondition();
+  private final List<PooledCompiler> pooledCompilers = new ArrayList<>();  // guarded by lock
+
+  private boolean closed;  // guarded by lock
+
+  /**
+   * Returns the engine used by {@link SCSSCompiler}s for which no engine was
+   * specified. The default engine starts processes on demand, and runs up to
+   * as many compilations per process as there are available processors.
+   *
+   * @return the default {@link SCSSEngine}, never {@code null}
+   */
+  public static SCSSEngine getDefault() {
+    synchronized(DEFAULT_LOCK) {
+      if(defaultEngine == null) {
+        defaultEngine = builder().build();
+      }
+
+      return defaultEngine;
+    }
+  }
+
+  /**
+   * Creates a new {@link Builder} for an engine.
+   *
+   * @return a new {@link Builder}, never {@code null}
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Closes all engines which are still open, including the default engine.
+   */
+  static void closeAll() {
+    for(SCSSEngine engine : List.copyOf(OPEN_ENGINES)) {
+      engine.close();
+    }
+  }
+
+  private SCSSEngine(Builder builder, EmbeddedCompiler.ProcessFactory processFactory, Executor executor) {
+    this.minProcesses = builder.minProcesses;
+    this.maxProcesses = builder.maxProcesses;
+    this.maxCompilationsPerProcess = builder.maxCompilationsPerProcess;
+    this.idleTimeout = builder.idleTimeout;
+    this.acquireTimeout = builder.acquireTimeout;
+    this.processFactory = processFactory;
+    this.executor = executor;
+    this.permits = new Semaphore(maxProcesses * maxCompilationsPerProcess, true);
+
+    OPEN_ENGINES.add(this);
+
+    for(int i = 0; i < minProcesses; i++) {
+      EmbeddedCompiler compiler = new EmbeddedCompiler(processFactory, executor);
+
+      pooledCompilers.add(new PooledCompiler(compiler));
+
+      executor.execute(() -> {
+        try {
+          compiler.start();
+        }
+        catch(IOException | IllegalStateException e) {
+          LOGGER.log(Level.WARNING, "Unable to start Dart SCSS compiler process", e);
+        }
+      });
+    }
+
+    executor.execute(this::evictIdleCompilers);
+  }
+
+  /**
+   * Returns the minimum number of processes this engine keeps.
+   *
+   * @return the minimum number of processes, never negative
+   */
+  public int getMinProcesses() {
+    return minProcesses;
+  }
+
+  /**
+   * Returns the maximum number of processes this engine starts.
+   *
+   * @return the maximum number of processes, always positive
+   */
+  public int getMaxProcesses() {
+    return maxProcesses;
+  }
+
+  /**
+   * Returns the maximum number of compilations a single process of this engine
+   * performs concurrently.
+   *
+   * @return the maximum number of concurrent compilations per process, always positive
+   */
+  public int getMaxCompilationsPerProcess() {
+    return maxCompilationsPerProcess;
+  }
+
+  /**
+   * Returns the number of processes currently managed by this engine, whether
+   * busy or idle.
+   *
+   * @return the number of processes, never negative
+   */
+  public int getProcessCount() {
+    lock.lock();
+
+    try {
+      return pooledCompilers.size();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of compilations currently in progress.
+   *
+   * @return the number of active compilations, never negative
+   */
+  public int getActiveCompilations() {
+    return maxProcesses * maxCompilationsPerProcess - permits.availablePermits();
+  }
+
+  /**
+   * Returns an estimate of the number of callers waiting for a process.
+   *
+   * @return an estimate of the number of waiting callers, never negative
+   */
+  public int getQueueLength() {
+    return permits.getQueueLength();
+  }
+
+  /**
+   * Stops all idle processes of this engine. Processes which are still in
+   * use are stopped as soon as their current compilations complete. Any
+   * further attempts to compile using this engine will fail.
+   */
+  @Override
+  public void close() {
+    List<EmbeddedCompiler> compilers = new ArrayList<>();
+
+    lock.lock();
+
+    try {
+      if(closed) {
+        return;
+      }
+
+      closed = true;
+
+      for(Iterator<PooledCompiler> iterator = pooledCompilers.iterator(); iterator.hasNext();) {
+        PooledCompiler pooledCompiler = iterator.next();
+
+        if(pooledCompiler.activeCompilations == 0) {
+          compilers.add(pooledCompiler.compiler);
+          iterator.remove();
+        }
+      }
+
+      closedCondition.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+
+    OPEN_ENGINES.remove(this);
+    compilers.forEach(EmbeddedCompiler::close);
+  }
+
+  /**
+   * Leases a compiler from this engine for a single compilation, waiting at most
+   * the acquire timeout for one to become available. The returned lease must be
+   * closed to return the compiler to the pool.
+   *
+   * @return a {@link Lease}, never {@code null}
+   * @throws IOException when no compiler became available in time, or the wait was interrupted
+   * @throws IllegalStateException when the engine was closed
+   */
+  Lease acquire() throws IOException {
+    try {
+      if(!permits.tryAcquire(acquireTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+        throw new IOException("Timed out after " + acquireTimeout + " waiting for a Dart SCSS compiler process");
+      }
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      throw new InterruptedIOException("Interrupted while waiting for a Dart SCSS compiler process");
+    }
+
+    lock.lock();
+
+    try {
+      if(closed) {
+        permits.release();
+
+        throw new IllegalStateException("Engine was closed");
+      }
+
+      /*
+       * Pick the busiest process which can still accept a compilation, so work
+       * is concentrated on as few processes as possible. The permits guarantee
+       * that either such a process exists, or another process can be started.
+       */
+
+      PooledCompiler selected = null;
+
+      for(PooledCompiler pooledCompiler : pooledCompilers) {
+        if(pooledCompiler.activeCompilations < maxCompilationsPerProcess && (selected == null || pooledCompiler.activeCompilations > selected.activeCompilations)) {
+          selected = pooledCompiler;
+        }
+      }
+
+      if(selected == null) {
+        selected = new PooledCompiler(new EmbeddedCompiler(processFactory, executor));
+        pooledCompilers.add(selected);
+      }
+
+      selected.activeCompilations++;
+
+      return new Lease(selected);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private void release(PooledCompiler pooledCompiler) {
+    boolean discard = false;
+
+    lock.lock();
+
+    try {
+      pooledCompiler.activeCompilations--;
+
+      if(pooledCompiler.activeCompilations == 0) {
+        pooledCompiler.idleSince = System.nanoTime();
+
+        if(closed) {
+          discard = pooledCompilers.remove(pooledCompiler);
+        }
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+
+    if(discard) {
+      pooledCompiler.compiler.close();
+    }
+
+    permits.release();
+  }
+
+  private void evictIdleCompilers() {
+    long timeoutNanos = idleTimeout.toNanos();
+
+    for(;;) {
+      List<EmbeddedCompiler> evicted = new ArrayList<>();
+
+      lock.lock();
+
+      try {
+        if(closed) {
+          return;
+        }
+
+        closedCondition.awaitNanos(Math.max(timeoutNanos / 2, TimeUnit.MILLISECONDS.toNanos(10)));
+
+        if(closed) {
+          return;
+        }
+
+        long now = System.nanoTime();
+
+        for(Iterator<PooledCompiler> iterator = pooledCompilers.iterator(); iterator.hasNext() && pooledCompilers.size() > minProcesses;) {
+          PooledCompiler pooledCompiler = iterator.next();
+
+          if(pooledCompiler.activeCompilations == 0 && now - pooledCompiler.idleSince >= timeoutNanos) {
+            evicted.add(pooledCompiler.compiler);
+            iterator.remove();
+          }
+        }
+      }
+      catch(InterruptedException e) {
+        return;
+      }
+      finally {
+        lock.unlock();
+      }
+
+      evicted.forEach(EmbeddedCompiler::close);
+    }
+  }
+
+  private static final class PooledCompiler {
+    final EmbeddedCompiler compiler;
+
+    int activeCompilations;  // guarded by lock
+    long idleSince = System.nanoTime();  // guarded by lock
+
+    PooledCompiler(EmbeddedCompiler compiler) {
+      this.compiler = compiler;
+    }
+  }
+
+  /*
+   * A compiler leased from the pool for a single compilation, which is
+   * returned when the lease is closed.
+   */
+  final class Lease implements AutoCloseable {
+    private final PooledCompiler pooledCompiler;
+
+    private boolean released;
+
+    Lease(PooledCompiler pooledCompiler) {
+      this.pooledCompiler = pooledCompiler;
+    }
+
+    EmbeddedCompiler compiler() {
+      return pooledCompiler.compiler;
+    }
+
+    @Override
+    public void close() {
+      if(!released) {
+        released = true;
+
+        release(pooledCompiler);
+      }
+    }
+  }
+
+  /**
+   * Builder for {@link SCSSEngine}s.
+   */
+  public static final class Builder {
+    private int minProcesses;
+    private int maxProcesses = 2;
+    private int maxCompilationsPerProcess = Runtime.getRuntime().availableProcessors();
+    private Duration idleTimeout = Duration.ofMinutes(1);
+    private Duration acquireTimeout = Duration.ofSeconds(30);
+
+    Builder() {}
+
+    /**
+     * Sets the minimum number of processes to keep running. These processes are
+     * started when the engine is built, and are not stopped when idle. Defaults to 0.
+     *
+     * @param minProcesses the minimum number of processes, cannot be negative
+     * @return this {@link Builder}, never {@code null}
+     * @throws IllegalArgumentException when {@code minProcesses} is negative
+     */
+    public Builder minProcesses(int minProcesses) {
+      if(minProcesses < 0) {
+        throw new IllegalArgumentException("minProcesses cannot be negative: " + minProcesses);
+      }
+
+      this.minProcesses = minProcesses;
+
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of processes to run concurrently. Defaults to 2.
+     *
+     * @param maxProcesses the maximum number of processes, must be positive
+     * @return this {@link Builder}, never {@code null}
+     * @throws IllegalArgumentException when {@code maxProcesses} is not positive
+     */
+    public Builder maxProcesses(int maxProcesses) {
+      if(maxProcesses < 1) {
+        throw new IllegalArgumentException("maxProcesses must be positive: " + maxProcesses);
+      }
+
+      this.maxProcesses = maxProcesses;
+
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of compilations a single process performs
+     * concurrently. Defaults to the number of available processors.
+     *
+     * @param maxCompilationsPerProcess the maximum number of concurrent compilations per process, must be positive
+     * @return this {@link Builder}, never {@code null}
+     * @throws IllegalArgumentException when {@code maxCompilationsPerProcess} is not positive
+     */
+    public Builder maxCompilationsPerProcess(int maxCompilationsPerProcess) {
+      if(maxCompilationsPerProcess < 1) {
+        throw new IllegalArgumentException("maxCompilationsPerProcess must be positive: " + maxCompilationsPerProcess);
+      }
+
+      this.maxCompilationsPerProcess = maxCompilationsPerProcess;
+
+      return this;
+    }
+
+    /**
+     * Sets how long a process can stay idle before it is stopped. Defaults to one minute.
+     *
+     * @param idleTimeout a {@link Duration}, cannot be {@code null} or negative
+     * @return this {@link Builder}, never {@code null}
+     * @throws NullPointerException when any argument is {@code null}
+     * @throws IllegalArgumentException when {@code idleTimeout} is negative
+     */
+    public Builder idleTimeout(Duration idleTimeout) {
+      this.idleTimeout = requireNonNegative(idleTimeout, "idleTimeout");
+
+      return this;
+    }
+
+    /**
+     * Sets how long a compilation waits for a process to become available when
+     * all processes are busy. Defaults to 30 seconds.
+     *
+     * @param acquireTimeout a {@link Duration}, cannot be {@code null} or negative
+     * @return this {@link Builder}, never {@code null}
+     * @throws NullPointerException when any argument is {@code null}
+     * @throws IllegalArgumentException when {@code acquireTimeout} is negative
+     */
+    public Builder acquireTimeout(Duration acquireTimeout) {
+      this.acquireTimeout = requireNonNegative(acquireTimeout, "acquireTimeout");
+
+      return this;
+    }
+
+    /**
+     * Creates a new {@link SCSSEngine} with the settings of this builder.
+     *
+     * @return a new {@link SCSSEngine}, never {@code null}
+     * @throws IllegalStateException when the minimum number of processes exceeds the maximum
+     */
+    public SCSSEngine build() {
+      return build(SCSSCompiler.PROCESS_FACTORY, SCSSCompiler.EXECUTOR);
+    }
+
+    SCSSEngine build(EmbeddedCompiler.ProcessFactory processFactory, Executor executor) {
+      if(minProcesses > maxProcesses) {
+        throw new IllegalStateException("minProcesses (" + minProcesses + ") cannot exceed maxProcesses (" + maxProcesses + ")");
+      }
+
+      if((long)maxProcesses * maxCompilationsPerProcess > Integer.MAX_VALUE) {
+        throw new IllegalStateException("maxProcesses (" + maxProcesses + ") times maxCompilationsPerProcess (" + maxCompilationsPerProcess + ") is too large");
+      }
+
+      return new SCSSEngine(this, processFactory, executor);
+    }
+
+    private static Duration requireNonNegative(Duration duration, String name) {
+      if(Objects.requireNonNull(duration, name).isNegative()) {
+        throw new IllegalArgumentException(name + " cannot be negative: " + duration);
+      }
+
+      return duration;
+    }
+  }
+}
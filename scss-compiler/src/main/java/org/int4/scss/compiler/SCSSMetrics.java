@@ -0,0 +1,216 @@
+package org.int4.scss.compiler;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Metrics about the compilations and compiler processes of all {@link SCSSCompiler}s
+ * in the JVM. The metrics are always collected, which takes only a few atomic
+ * updates per compilation. To read them with standard JMX tooling, like JConsole
+ * or Java Mission Control, {@link #register() register} them as a platform MBean
+ * named {@value #OBJECT_NAME}.
+ */
+public final class SCSSMetrics implements SCSSMetricsMXBean {
+
+  /**
+   * The name under which the metrics are registered with the platform MBean server.
+   */
+  public static final String OBJECT_NAME = "org.int4.scss.compiler:type=SCSSMetrics";
+
+  static final SCSSMetrics INSTANCE = new SCSSMetrics();
+
+  private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+  private final AtomicLong succeeded = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong errored = new AtomicLong();
+  private final LatencyHistogram latencies = new LatencyHistogram();
+  private final LatencyHistogram spawnTimes = new LatencyHistogram();
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicLong bytesProduced = new AtomicLong();
+  private final AtomicLong cacheHits = new AtomicLong();
+  private final AtomicLong cacheMisses = new AtomicLong();
+
+  private SCSSMetrics() {}
+
+  /**
+   * Registers the metrics with the platform MBean server, under the name
+   * {@value #OBJECT_NAME}. Does nothing when they were registered already.
+   *
+   * @throws IllegalStateException when registration failed
+   */
+  public static void register() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, objectName());
+    }
+    catch(InstanceAlreadyExistsException e) {
+      // already registered
+    }
+    catch(JMException e) {
+      throw new IllegalStateException("Unable to register MBean: " + OBJECT_NAME, e);
+    }
+  }
+
+  /**
+   * Removes the metrics from the platform MBean server. Does nothing when they
+   * were not registered.
+   *
+   * @throws IllegalStateException when removal failed
+   */
+  public static void unregister() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName());
+    }
+    catch(InstanceNotFoundException e) {
+      // not registered
+    }
+    catch(JMException e) {
+      throw new IllegalStateException("Unable to unregister MBean: " + OBJECT_NAME, e);
+    }
+  }
+
+  private static ObjectName objectName() throws MalformedObjectNameException {
+    return new ObjectName(OBJECT_NAME);
+  }
+
+  @Override
+  public long getSucceededCompilations() {
+    return succeeded.get();
+  }
+
+  @Override
+  public long getFailedCompilations() {
+    return failed.get();
+  }
+
+  @Override
+  public long getErroredCompilations() {
+    return errored.get();
+  }
+
+  @Override
+  public double getLatencyMeanMillis() {
+    return latencies.mean() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getLatencyP50Millis() {
+    return latencies.percentile(0.5) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getLatencyP90Millis() {
+    return latencies.percentile(0.9) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getLatencyP99Millis() {
+    return latencies.percentile(0.99) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getLatencyP999Millis() {
+    return latencies.percentile(0.999) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getLatencyMaxMillis() {
+    return latencies.max() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public long getSpawnedProcesses() {
+    return spawnTimes.count();
+  }
+
+  @Override
+  public double getSpawnMeanMillis() {
+    return spawnTimes.mean() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getSpawnMaxMillis() {
+    return spawnTimes.max() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public int getLiveProcesses() {
+    return ProcessReaper.count();
+  }
+
+  @Override
+  public int getActiveCompilations() {
+    return active.get();
+  }
+
+  @Override
+  public int getQueuedCompilations() {
+    return queued.get();
+  }
+
+  @Override
+  public long getBytesProduced() {
+    return bytesProduced.get();
+  }
+
+  @Override
+  public long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  @Override
+  public long getCacheMisses() {
+    return cacheMisses.get();
+  }
+
+  @Override
+  public double getCacheHitRatio() {
+    long hits = cacheHits.get();
+    long lookups = hits + cacheMisses.get();
+
+    return lookups == 0 ? 0 : (double)hits / lookups;
+  }
+
+  void succeeded(long nanos) {
+    succeeded.incrementAndGet();
+    latencies.record(nanos);
+  }
+
+  void failed(long nanos) {
+    failed.incrementAndGet();
+    latencies.record(nanos);
+  }
+
+  void errored(long nanos) {
+    errored.incrementAndGet();
+    latencies.record(nanos);
+  }
+
+  void spawned(long nanos) {
+    spawnTimes.record(nanos);
+  }
+
+  void queued(int delta) {
+    queued.addAndGet(delta);
+  }
+
+  void active(int delta) {
+    active.addAndGet(delta);
+  }
+
+  void produced(int bytes) {
+    bytesProduced.addAndGet(bytes);
+  }
+
+  void cacheLookup(boolean hit) {
+    (hit ? cacheHits : cacheMisses).incrementAndGet();
+  }
+}
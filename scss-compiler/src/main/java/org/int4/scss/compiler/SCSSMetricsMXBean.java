@@ -0,0 +1,151 @@
+package org.int4.scss.compiler;
+
+/**
+ * Management interface of {@link SCSSMetrics}, describing the compilations
+ * and compiler processes of all {@link SCSSCompiler}s in the JVM.
+ * <p>
+ * Counts are totals since the JVM started. Latencies are in milliseconds,
+ * and are reported with an error of at most 12.5%.
+ */
+public interface SCSSMetricsMXBean {
+
+  /**
+   * Returns the number of compilations which produced CSS, including
+   * compilations served from a cache or shared with another caller.
+   *
+   * @return the number of successful compilations, never negative
+   */
+  long getSucceededCompilations();
+
+  /**
+   * Returns the number of compilations which failed because of an error in
+   * a stylesheet.
+   *
+   * @return the number of failed compilations, never negative
+   */
+  long getFailedCompilations();
+
+  /**
+   * Returns the number of compilations which could not be completed, because
+   * of an IO error, a timeout or an interruption.
+   *
+   * @return the number of compilations which could not be completed, never negative
+   */
+  long getErroredCompilations();
+
+  /**
+   * Returns the mean time compilations took, whatever their outcome.
+   *
+   * @return the mean latency in milliseconds, or 0 when there were no compilations
+   */
+  double getLatencyMeanMillis();
+
+  /**
+   * Returns the time which half of the compilations did not exceed.
+   *
+   * @return the median latency in milliseconds, or 0 when there were no compilations
+   */
+  double getLatencyP50Millis();
+
+  /**
+   * Returns the time which 90% of the compilations did not exceed.
+   *
+   * @return the 90th percentile latency in milliseconds, or 0 when there were no compilations
+   */
+  double getLatencyP90Millis();
+
+  /**
+   * Returns the time which 99% of the compilations did not exceed.
+   *
+   * @return the 99th percentile latency in milliseconds, or 0 when there were no compilations
+   */
+  double getLatencyP99Millis();
+
+  /**
+   * Returns the time which 99.9% of the compilations did not exceed.
+   *
+   * @return the 99.9th percentile latency in milliseconds, or 0 when there were no compilations
+   */
+  double getLatencyP999Millis();
+
+  /**
+   * Returns the longest time a compilation took.
+   *
+   * @return the maximum latency in milliseconds, or 0 when there were no compilations
+   */
+  double getLatencyMaxMillis();
+
+  /**
+   * Returns the number of compiler processes started.
+   *
+   * @return the number of processes started, never negative
+   */
+  long getSpawnedProcesses();
+
+  /**
+   * Returns the mean time starting a compiler process took.
+   *
+   * @return the mean time in milliseconds, or 0 when no processes were started
+   */
+  double getSpawnMeanMillis();
+
+  /**
+   * Returns the longest time starting a compiler process took.
+   *
+   * @return the maximum time in milliseconds, or 0 when no processes were started
+   */
+  double getSpawnMaxMillis();
+
+  /**
+   * Returns the number of compiler processes which are currently running.
+   *
+   * @return the number of running processes, never negative
+   */
+  int getLiveProcesses();
+
+  /**
+   * Returns the number of compilations currently running in a compiler process.
+   *
+   * @return the number of running compilations, never negative
+   */
+  int getActiveCompilations();
+
+  /**
+   * Returns the number of compilations currently waiting for a compiler
+   * process, or for other compilations of the same compiler to complete.
+   *
+   * @return the number of waiting compilations, never negative
+   */
+  int getQueuedCompilations();
+
+  /**
+   * Returns the number of bytes of CSS produced by compiler processes. CSS
+   * served from a cache, or shared with another caller, is not counted.
+   *
+   * @return the number of bytes produced, never negative
+   */
+  long getBytesProduced();
+
+  /**
+   * Returns how often a compilation by a compiler with an {@link SCSSCache}
+   * was served from the cache.
+   *
+   * @return the number of cache hits, never negative
+   */
+  long getCacheHits();
+
+  /**
+   * Returns how often a compilation by a compiler with an {@link SCSSCache}
+   * could not be served from the cache.
+   *
+   * @return the number of cache misses, never negative
+   */
+  long getCacheMisses();
+
+  /**
+   * Returns the fraction of cache lookups which were hits.
+   *
+   * @return a fraction between 0 and 1, or 0 when no lookups were done
+   */
+  double getCacheHitRatio();
+}
@@ -0,0 +1,448 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the CSS of the stylesheets compiled through it up to date while their
+ * files are being edited, for use by development tools and servers.
+ * <p>
+ * For each stylesheet compiled with {@link #asString(Path)}, the watcher
+ * records the files it loaded, including the files imported indirectly, and
+ * watches these for changes with a {@link WatchService}. The CSS is kept until
+ * one of these files changes, after which only the stylesheets depending on
+ * the changed file are compiled again. Bursts of changes, like those caused by
+ * saving several files at once, are handled together once no further changes
+ * occurred for the debounce period.
+ * <p>
+ * Unless disabled, affected stylesheets are compiled again in the background
+ * as soon as a change is detected, so the next call to {@link #asString(Path)}
+ * does not have to wait for the compilation. {@link Listener}s are notified
+ * with the new CSS each time a stylesheet was compiled again after a change.
+ * When a background compilation fails, it is logged, and the next call to
+ * {@link #asString(Path)} compiles the stylesheet again, reporting the errors
+ * to the handlers of the compiler.
+ * <p>
+ * Watching for changes and compiling in the background is done on the {@link
+ * SCSSCompiler.Builder#executor(Executor) executor} of the
+ * compiler.
+ * <p>
+ * Only files in the default file system are watched; stylesheets loaded
+ * through {@link Importer}s are not watched. The watcher must be closed after
+ * use to stop watching.
+ */
+public final class SCSSWatcher implements AutoCloseable {
+  private static final Logger LOGGER = System.getLogger(SCSSWatcher.class.getName());
+
+  private final SCSSCompiler compiler;
+  private final Duration debounce;
+  private final boolean recompile;
+  private final WatchService watchService;
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<Path, Entry> entries = new HashMap<>();  // guarded by lock
+  private final Map<Path, Set<Entry>> dependents = new HashMap<>();  // guarded by lock
+  private final Map<Path, WatchKey> watchKeys = new HashMap<>();  // guarded by lock
+
+  private boolean closed;  // guarded by lock
+
+  /**
+   * Listener notified when the CSS of a stylesheet changed.
+   */
+  public interface Listener {
+
+    /**
+     * Called with the new CSS of a stylesheet, after it was compiled again
+     * because one of the files it depends on changed. This method is called on
+     * the thread which compiled the stylesheet.
+     *
+     * @param scss the absolute path of the SCSS file, never {@code null}
+     * @param css the new CSS, never {@code null}
+     */
+    void stylesheetChanged(Path scss, String css);
+  }
+
+  /**
+   * Creates a new {@link Builder} for a watcher which compiles stylesheets with
+   * the given compiler.
+   *
+   * @param compiler an {@link SCSSCompiler}, cannot be {@code null}
+   * @return a new {@link Builder}, never {@code null}
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public static Builder builder(SCSSCompiler compiler) {
+    return new Builder(compiler);
+  }
+
+  private SCSSWatcher(Builder builder) throws IOException {
+    this.compiler = builder.compiler;
+    this.debounce = builder.debounce;
+    this.recompile = builder.recompile;
+    this.watchService = FileSystems.getDefault().newWatchService();
+
+    compiler.executor().execute(this::watch);
+  }
+
+  /**
+   * Returns the CSS of the given scss file, compiling it only when it was not
+   * compiled before or when any of the files it depends on changed. The file
+   * and its dependencies are watched from then on.
+   *
+   * @param scss a SCSS file to compile, cannot be {@code null}
+   * @return a CSS string, never {@code null}
+   * @throws IOException when an IO error occurred
+   * @throws SCSSProcessingException when a compilation or syntax error is detected
+   * @throws NullPointerException when any argument is {@code null}
+   * @throws IllegalStateException when the watcher was closed
+   */
+  public String asString(Path scss) throws IOException {
+    Path path = scss.toAbsolutePath().normalize();
+    Entry entry;
+    long generation;
+
+    lock.lock();
+
+    try {
+      if(closed) {
+        throw new IllegalStateException("Watcher was closed");
+      }
+
+      entry = entries.computeIfAbsent(path, Entry::new);
+
+      if(entry.css != null) {
+        return entry.css;
+      }
+
+      generation = entry.generation;
+    }
+    finally {
+      lock.unlock();
+    }
+
+    return compile(entry, generation);
+  }
+
+  /**
+   * Adds a {@link Listener} which is notified when the CSS of a stylesheet
+   * changed.
+   *
+   * @param listener a {@link Listener}, cannot be {@code null}
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public void addListener(Listener listener) {
+    listeners.add(Objects.requireNonNull(listener, "listener"));
+  }
+
+  /**
+   * Removes a {@link Listener} added earlier.
+   *
+   * @param listener a {@link Listener}, cannot be {@code null}
+   * @throws NullPointerException when any argument is {@code null}
+   */
+  public void removeListener(Listener listener) {
+    listeners.remove(Objects.requireNonNull(listener, "listener"));
+  }
+
+  /**
+   * Stops watching for changes, and forgets all compiled stylesheets.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+
+    try {
+      closed = true;
+      entries.clear();
+      dependents.clear();
+      watchKeys.clear();
+      watchService.close();
+    }
+    catch(IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to close watch service", e);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private String compile(Entry entry, long generation) throws IOException {
+    Set<Path> loadedFiles = new HashSet<>();
+    String css = null;
+
+    loadedFiles.add(entry.path);  // watched even when it does not exist (yet)
+
+    try {
+      css = compiler.asString(entry.path, loadedFiles);
+
+      return css;
+    }
+    finally {
+      if(update(entry, generation, loadedFiles, css) && css != null && generation > 0) {
+        notifyListeners(entry.path, css);
+      }
+    }
+  }
+
+  /*
+   * Records the outcome of a compilation, unless the entry was invalidated or
+   * updated by another compilation in the mean time. The dependencies are also
+   * recorded when the compilation failed, so fixing the error is noticed.
+   */
+  private boolean update(Entry entry, long generation, Set<Path> loadedFiles, String css) {
+    lock.lock();
+
+    try {
+      if(entries.get(entry.path) != entry || entry.generation != generation || entry.css != null) {
+        return false;
+      }
+
+      for(Path file : entry.dependencies) {
+        Set<Entry> set = dependents.get(file);
+
+        set.remove(entry);
+
+        if(set.isEmpty()) {
+          dependents.remove(file);
+        }
+      }
+
+      entry.dependencies = Set.copyOf(loadedFiles);
+      entry.css = css;
+
+      for(Path file : entry.dependencies) {
+        dependents.computeIfAbsent(file, k -> new HashSet<>()).add(entry);
+      }
+
+      updateWatchKeys();
+
+      return true;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /*
+   * Watches the directories of all dependencies, as a WatchService can only
+   * watch directories, and stops watching directories no longer needed.
+   */
+  private void updateWatchKeys() {
+    Set<Path> directories = new HashSet<>();
+
+    for(Path file : dependents.keySet()) {
+      if(file.getParent() != null) {
+        directories.add(file.getParent());
+      }
+    }
+
+    watchKeys.entrySet().removeIf(e -> {
+      if(directories.contains(e.getKey())) {
+        return false;
+      }
+
+      e.getValue().cancel();
+
+      return true;
+    });
+
+    for(Path directory : directories) {
+      if(!watchKeys.containsKey(directory)) {
+        try {
+          watchKeys.put(directory, directory.register(
+            watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE
+          ));
+        }
+        catch(IOException | ClosedWatchServiceException e) {
+          LOGGER.log(Level.DEBUG, "Unable to watch directory: " + directory, e);
+        }
+      }
+    }
+  }
+
+  private void watch() {
+    try {
+      for(;;) {
+        Set<Path> changedFiles = new HashSet<>();
+        Set<Path> overflowedDirectories = new HashSet<>();
+        WatchKey key = watchService.take();
+
+        // Collect further changes until none occurred for the debounce period:
+        do {
+          Path directory = (Path)key.watchable();
+
+          for(WatchEvent<?> event : key.pollEvents()) {
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+              overflowedDirectories.add(directory);
+            }
+            else {
+              changedFiles.add(directory.resolve((Path)event.context()));
+            }
+          }
+
+          key.reset();
+        }
+        while((key = watchService.poll(debounce.toNanos(), TimeUnit.NANOSECONDS)) != null);
+
+        invalidate(changedFiles, overflowedDirectories);
+      }
+    }
+    catch(ClosedWatchServiceException e) {
+      // watcher was closed
+    }
+    catch(InterruptedException e) {
+      LOGGER.log(Level.WARNING, "Stopped watching for changes, watch thread was interrupted");
+    }
+  }
+
+  private void invalidate(Set<Path> changedFiles, Set<Path> overflowedDirectories) {
+    Map<Entry, Long> invalidated = new HashMap<>();
+
+    lock.lock();
+
+    try {
+      for(Map.Entry<Path, Set<Entry>> e : dependents.entrySet()) {
+        Path file = e.getKey();
+
+        if(changedFiles.contains(file) || overflowedDirectories.contains(file.getParent())) {
+          for(Entry entry : e.getValue()) {
+            if(!invalidated.containsKey(entry)) {
+              entry.css = null;
+              entry.generation++;
+              invalidated.put(entry, entry.generation);
+            }
+          }
+        }
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+
+    if(!invalidated.isEmpty()) {
+      LOGGER.log(Level.DEBUG, "Stylesheets affected by changes to " + changedFiles + ": " + invalidated.keySet());
+    }
+
+    if(recompile) {
+      invalidated.forEach((entry, generation) -> compiler.execute(() -> {
+        try {
+          compile(entry, generation);
+        }
+        catch(IOException | RuntimeException e) {
+          LOGGER.log(Level.WARNING, "Unable to compile changed stylesheet: " + entry.path, e);
+        }
+      }));
+    }
+  }
+
+  private void notifyListeners(Path path, String css) {
+    for(Listener listener : listeners) {
+      try {
+        listener.stylesheetChanged(path, css);
+      }
+      catch(RuntimeException e) {
+        LOGGER.log(Level.WARNING, "Listener failed for changed stylesheet: " + path, e);
+      }
+    }
+  }
+
+  /*
+   * A stylesheet compiled through the watcher. The generation is incremented
+   * each time the stylesheet is invalidated, so compilations which started
+   * before the invalidation are not recorded.
+   */
+  private static final class Entry {
+    final Path path;
+
+    Set<Path> dependencies = Set.of();  // guarded by lock
+    String css;  // guarded by lock, null when not compiled or outdated
+    long generation;  // guarded by lock
+
+    Entry(Path path) {
+      this.path = path;
+    }
+
+    @Override
+    public String toString() {
+      return path.toString();
+    }
+  }
+
+  /**
+   * Builder for {@link SCSSWatcher}s.
+   */
+  public static final class Builder {
+    private final SCSSCompiler compiler;
+
+    private Duration debounce = Duration.ofMillis(100);
+    private boolean recompile = true;
+
+    Builder(SCSSCompiler compiler) {
+      this.compiler = Objects.requireNonNull(compiler, "compiler");
+    }
+
+    /**
+     * Sets how long no further changes must occur before changes are handled.
+     * Defaults to 100 milliseconds.
+     *
+     * @param debounce a {@link Duration}, cannot be {@code null} or negative
+     * @return this {@link Builder}, never {@code null}
+     * @throws NullPointerException when any argument is {@code null}
+     * @throws IllegalArgumentException when {@code debounce} is negative
+     */
+    public Builder debounce(Duration debounce) {
+      if(debounce.isNegative()) {
+        throw new IllegalArgumentException("debounce cannot be negative: " + debounce);
+      }
+
+      this.debounce = debounce;
+
+      return this;
+    }
+
+    /**
+     * Sets whether stylesheets affected by a change are compiled again in the
+     * background immediately. When disabled, they are compiled again on their
+     * next use. Defaults to {@code true}.
+     *
+     * @param recompile whether to compile affected stylesheets immediately
+     * @return this {@link Builder}, never {@code null}
+     */
+    public Builder recompile(boolean recompile) {
+      this.recompile = recompile;
+
+      return this;
+    }
+
+    /**
+     * Creates a new {@link SCSSWatcher} with the settings of this builder.
+     *
+     * @return a new {@link SCSSWatcher}, never {@code null}
+     * @throws IOException when the file system could not be watched
+     */
+    public SCSSWatcher build() throws IOException {
+      return new SCSSWatcher(this);
+    }
+  }
+}
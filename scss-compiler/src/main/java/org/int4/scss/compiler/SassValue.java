@@ -0,0 +1,243 @@
+package org.int4.scss.compiler;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A value passed to or returned from a Sass function implemented in Java.
+ *
+ * @see SCSSCompiler.Builder#functions(Map)
+ */
+public sealed interface SassValue {
+
+  /**
+   * The Sass value {@code true}.
+   */
+  SassBoolean TRUE = new SassBoolean(true);
+
+  /**
+   * The Sass value {@code false}.
+   */
+  SassBoolean FALSE = new SassBoolean(false);
+
+  /**
+   * The Sass value {@code null}.
+   */
+  SassNull NULL = new SassNull();
+
+  /**
+   * Returns whether this value is truthy in Sass, which every value except
+   * {@code false} and {@code null} is.
+   *
+   * @return {@code true} if this value is truthy, otherwise {@code false}
+   */
+  default boolean isTruthy() {
+    return true;
+  }
+
+  /**
+   * A Sass string.
+   *
+   * @param text the text of the string, cannot be {@code null}
+   * @param quoted whether the string is quoted
+   */
+  record SassString(String text, boolean quoted) implements SassValue {
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param text the text of the string, cannot be {@code null}
+     * @param quoted whether the string is quoted
+     * @throws NullPointerException when {@code text} is {@code null}
+     */
+    public SassString {
+      Objects.requireNonNull(text, "text");
+    }
+  }
+
+  /**
+   * A Sass number, with optional units.
+   *
+   * @param value the value of the number
+   * @param numerators the units in the numerator, cannot be {@code null} but can be empty
+   * @param denominators the units in the denominator, cannot be {@code null} but can be empty
+   */
+  record SassNumber(double value, List<String> numerators, List<String> denominators) implements SassValue {
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param value the value of the number
+     * @param numerators the units in the numerator, cannot be {@code null} but can be empty
+     * @param denominators the units in the denominator, cannot be {@code null} but can be empty
+     * @throws NullPointerException when any argument is {@code null}
+     */
+    public SassNumber {
+      numerators = List.copyOf(numerators);
+      denominators = List.copyOf(denominators);
+    }
+
+    /**
+     * Creates a number without units.
+     *
+     * @param value the value of the number
+     * @return a {@link SassNumber}, never {@code null}
+     */
+    public static SassNumber of(double value) {
+      return new SassNumber(value, List.of(), List.of());
+    }
+
+    /**
+     * Creates a number with a single unit, like {@code px}.
+     *
+     * @param value the value of the number
+     * @param unit a unit, cannot be {@code null}
+     * @return a {@link SassNumber}, never {@code null}
+     * @throws NullPointerException when {@code unit} is {@code null}
+     */
+    public static SassNumber of(double value, String unit) {
+      return new SassNumber(value, List.of(unit), List.of());
+    }
+  }
+
+  /**
+   * A Sass color. The meaning of the channels depends on the color space, for
+   * example for {@code rgb} they are the red, green and blue channels ranging
+   * from 0 to 255. Missing channels, written as {@code none} in Sass, are
+   * represented as {@code null}.
+   *
+   * @param space the name of the color space, like {@code rgb} or {@code hsl}, cannot be {@code null}
+   * @param channel1 the first channel, can be {@code null}
+   * @param channel2 the second channel, can be {@code null}
+   * @param channel3 the third channel, can be {@code null}
+   * @param alpha the alpha channel, from 0 to 1, can be {@code null}
+   */
+  record SassColor(String space, Double channel1, Double channel2, Double channel3, Double alpha) implements SassValue {
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param space the name of the color space, like {@code rgb} or {@code hsl}, cannot be {@code null}
+     * @param channel1 the first channel, can be {@code null}
+     * @param channel2 the second channel, can be {@code null}
+     * @param channel3 the third channel, can be {@code null}
+     * @param alpha the alpha channel, from 0 to 1, can be {@code null}
+     * @throws NullPointerException when {@code space} is {@code null}
+     */
+    public SassColor {
+      Objects.requireNonNull(space, "space");
+    }
+
+    /**
+     * Creates a color in the {@code rgb} color space.
+     *
+     * @param red the red channel, from 0 to 255
+     * @param green the green channel, from 0 to 255
+     * @param blue the blue channel, from 0 to 255
+     * @param alpha the alpha channel, from 0 to 1
+     * @return a {@link SassColor}, never {@code null}
+     */
+    public static SassColor rgb(double red, double green, double blue, double alpha) {
+      return new SassColor("rgb", red, green, blue, alpha);
+    }
+  }
+
+  /**
+   * A Sass list.
+   *
+   * @param contents the elements of the list, cannot be {@code null} or contain {@code null}s
+   * @param separator the {@link Separator} of the list, cannot be {@code null}
+   * @param brackets whether the list has square brackets
+   */
+  record SassList(List<SassValue> contents, Separator separator, boolean brackets) implements SassValue {
+
+    /**
+     * The separators of a Sass list.
+     */
+    public enum Separator {
+
+      /**
+       * Elements are separated by commas.
+       */
+      COMMA,
+
+      /**
+       * Elements are separated by spaces.
+       */
+      SPACE,
+
+      /**
+       * Elements are separated by slashes.
+       */
+      SLASH,
+
+      /**
+       * The separator is not decided yet, which is only allowed for lists with
+       * at most one element.
+       */
+      UNDECIDED
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param contents the elements of the list, cannot be {@code null} or contain {@code null}s
+     * @param separator the {@link Separator} of the list, cannot be {@code null}
+     * @param brackets whether the list has square brackets
+     * @throws NullPointerException when {@code contents} or {@code separator} is {@code null}
+     */
+    public SassList {
+      contents = List.copyOf(contents);
+      Objects.requireNonNull(separator, "separator");
+    }
+  }
+
+  /**
+   * A Sass map. The order of the entries is retained.
+   *
+   * @param entries the entries of the map, cannot be {@code null} or contain {@code null}s
+   */
+  record SassMap(Map<SassValue, SassValue> entries) implements SassValue {
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param entries the entries of the map, cannot be {@code null} or contain {@code null}s
+     * @throws NullPointerException when {@code entries} is or contains {@code null}
+     */
+    public SassMap {
+      Map<SassValue, SassValue> copy = new LinkedHashMap<>();
+
+      entries.forEach((k, v) -> copy.put(Objects.requireNonNull(k, "key"), Objects.requireNonNull(v, "value")));
+
+      entries = Collections.unmodifiableMap(copy);
+    }
+  }
+
+  /**
+   * A Sass boolean, either {@link SassValue#TRUE} or {@link SassValue#FALSE}.
+   *
+   * @param value the value of the boolean
+   */
+  record SassBoolean(boolean value) implements SassValue {
+
+    @Override
+    public boolean isTruthy() {
+      return value;
+    }
+  }
+
+  /**
+   * The Sass {@link SassValue#NULL null} value.
+   */
+  record SassNull() implements SassValue {
+
+    @Override
+    public boolean isTruthy() {
+      return false;
+    }
+  }
+}
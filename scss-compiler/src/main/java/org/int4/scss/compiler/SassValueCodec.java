@@ -0,0 +1,230 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.int4.scss.compiler.SassValue.SassBoolean;
+import org.int4.scss.compiler.SassValue.SassColor;
+import org.int4.scss.compiler.SassValue.SassList;
+import org.int4.scss.compiler.SassValue.SassList.Separator;
+import org.int4.scss.compiler.SassValue.SassMap;
+import org.int4.scss.compiler.SassValue.SassNull;
+import org.int4.scss.compiler.SassValue.SassNumber;
+import org.int4.scss.compiler.SassValue.SassString;
+
+/*
+ * Encodes and decodes the Value message of the Dart Sass embedded protocol.
+ * Argument lists are decoded as plain lists, ignoring any keyword arguments.
+ * Functions, mixins and calculations cannot be represented and are rejected.
+ */
+final class SassValueCodec {
+  private static final int SINGLETON_TRUE = 0;
+  private static final int SINGLETON_FALSE = 1;
+  private static final int SINGLETON_NULL = 2;
+
+  private SassValueCodec() {}
+
+  static ProtobufWriter encode(SassValue value) {
+    ProtobufWriter writer = new ProtobufWriter();
+
+    switch(value) {
+      case SassString s -> writer.writeMessage(1, new ProtobufWriter().writeString(1, s.text()).writeBool(2, s.quoted()));
+      case SassNumber n -> {
+        ProtobufWriter number = new ProtobufWriter().writeDouble(1, n.value());
+
+        n.numerators().forEach(unit -> number.writeString(2, unit));
+        n.denominators().forEach(unit -> number.writeString(3, unit));
+
+        writer.writeMessage(2, number);
+      }
+      case SassList l -> {
+        ProtobufWriter list = new ProtobufWriter()
+          .writeUInt(1, l.separator().ordinal())
+          .writeBool(2, l.brackets());
+
+        l.contents().forEach(element -> list.writeMessage(3, encode(element)));
+
+        writer.writeMessage(5, list);
+      }
+      case SassMap m -> {
+        ProtobufWriter map = new ProtobufWriter();
+
+        m.entries().forEach((k, v) -> map.writeMessage(1, new ProtobufWriter().writeMessage(1, encode(k)).writeMessage(2, encode(v))));
+
+        writer.writeMessage(6, map);
+      }
+      case SassBoolean b -> writer.writeUInt(7, b.value() ? SINGLETON_TRUE : SINGLETON_FALSE);
+      case SassNull n -> writer.writeUInt(7, SINGLETON_NULL);
+      case SassColor c -> {
+        ProtobufWriter color = new ProtobufWriter().writeString(1, c.space());
+
+        writeOptionalDouble(color, 2, c.channel1());
+        writeOptionalDouble(color, 3, c.channel2());
+        writeOptionalDouble(color, 4, c.channel3());
+        writeOptionalDouble(color, 5, c.alpha());
+
+        writer.writeMessage(14, color);
+      }
+    }
+
+    return writer;
+  }
+
+  static SassValue decode(ProtobufReader reader) throws IOException {
+    SassValue value = null;
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      value = switch(tag >>> 3) {
+        case 1 -> decodeString(reader.readMessage());
+        case 2 -> decodeNumber(reader.readMessage());
+        case 5 -> decodeList(reader.readMessage(), 1, 3);
+        case 6 -> decodeMap(reader.readMessage());
+        case 7 -> switch(reader.readUInt32()) {
+          case SINGLETON_TRUE -> SassValue.TRUE;
+          case SINGLETON_FALSE -> SassValue.FALSE;
+          default -> SassValue.NULL;
+        };
+        case 10 -> decodeList(reader.readMessage(), 2, 3);  // argument list
+        case 14 -> decodeColor(reader.readMessage());
+        case 8, 9 -> throw new IOException("Functions are not supported as arguments of Java functions");
+        case 12 -> throw new IOException("Calculations are not supported as arguments of Java functions");
+        case 13 -> throw new IOException("Mixins are not supported as arguments of Java functions");
+        default -> throw new IOException("Unsupported value type: " + (tag >>> 3));
+      };
+    }
+
+    if(value == null) {
+      throw new IOException("Malformed value: missing value");
+    }
+
+    return value;
+  }
+
+  private static SassString decodeString(ProtobufReader reader) throws IOException {
+    String text = "";
+    boolean quoted = false;
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      switch(tag >>> 3) {
+        case 1 -> text = reader.readString();
+        case 2 -> quoted = reader.readBool();
+        default -> reader.skip(tag);
+      }
+    }
+
+    return new SassString(text, quoted);
+  }
+
+  private static SassNumber decodeNumber(ProtobufReader reader) throws IOException {
+    double value = 0;
+    List<String> numerators = new ArrayList<>();
+    List<String> denominators = new ArrayList<>();
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      switch(tag >>> 3) {
+        case 1 -> value = reader.readDouble();
+        case 2 -> numerators.add(reader.readString());
+        case 3 -> denominators.add(reader.readString());
+        default -> reader.skip(tag);
+      }
+    }
+
+    return new SassNumber(value, numerators, denominators);
+  }
+
+  private static SassList decodeList(ProtobufReader reader, int separatorField, int contentsField) throws IOException {
+    Separator separator = Separator.COMMA;
+    boolean brackets = false;
+    List<SassValue> contents = new ArrayList<>();
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+      int field = tag >>> 3;
+
+      if(field == separatorField) {
+        int ordinal = reader.readUInt32();
+
+        separator = ordinal < Separator.values().length ? Separator.values()[ordinal] : Separator.UNDECIDED;
+      }
+      else if(field == contentsField) {
+        contents.add(decode(reader.readMessage()));
+      }
+      else if(field == 2 && separatorField == 1) {
+        brackets = reader.readBool();
+      }
+      else {
+        reader.skip(tag);
+      }
+    }
+
+    return new SassList(contents, separator, brackets);
+  }
+
+  private static SassMap decodeMap(ProtobufReader reader) throws IOException {
+    Map<SassValue, SassValue> entries = new LinkedHashMap<>();
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+
+      if(tag >>> 3 == 1) {
+        ProtobufReader entry = reader.readMessage();
+        SassValue key = SassValue.NULL;
+        SassValue value = SassValue.NULL;
+
+        while(entry.hasRemaining()) {
+          int entryTag = entry.readTag();
+
+          switch(entryTag >>> 3) {
+            case 1 -> key = decode(entry.readMessage());
+            case 2 -> value = decode(entry.readMessage());
+            default -> entry.skip(entryTag);
+          }
+        }
+
+        entries.put(key, value);
+      }
+      else {
+        reader.skip(tag);
+      }
+    }
+
+    return new SassMap(entries);
+  }
+
+  private static SassColor decodeColor(ProtobufReader reader) throws IOException {
+    String space = "rgb";
+    Double[] channels = new Double[4];
+
+    while(reader.hasRemaining()) {
+      int tag = reader.readTag();
+      int field = tag >>> 3;
+
+      if(field == 1) {
+        space = reader.readString();
+      }
+      else if(field >= 2 && field <= 5) {
+        channels[field - 2] = reader.readDouble();
+      }
+      else {
+        reader.skip(tag);
+      }
+    }
+
+    return new SassColor(space, channels[0], channels[1], channels[2], channels[3]);
+  }
+
+  private static void writeOptionalDouble(ProtobufWriter writer, int field, Double value) {
+    if(value != null) {
+      writer.writeDouble(field, value);
+    }
+  }
+}
@@ -0,0 +1,208 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Coalesces concurrent executions of tasks with the same key into a single
+ * execution, of which all callers receive the outcome. Tasks run on the
+ * executor given by the first caller rather than on its thread, so an
+ * interrupted caller only stops waiting, without affecting the other callers.
+ * When all callers stopped waiting, the task is interrupted, as nobody is
+ * interested in its outcome anymore. A caller arriving after a task completed,
+ * or was abandoned this way, starts a new execution.
+ *
+ * A caller may also run the task on its own thread, by giving an executor which
+ * runs it directly. When such a caller is interrupted, the task fails for it
+ * alone; the other callers then start a new execution.
+ */
+final class SingleFlight<K, V> {
+  private final ConcurrentHashMap<K, Flight> flights = new ConcurrentHashMap<>();
+
+  interface Task<V> {
+    V call() throws IOException;
+  }
+
+  /**
+   * Executes the given task, or joins an execution already in progress for the
+   * given key.
+   *
+   * @param key a key, cannot be {@code null}
+   * @param executor an {@link Executor} to run the task on when no execution is in progress, cannot be {@code null}
+   * @param task a {@link Task} to execute, cannot be {@code null}
+   * @return the result of the task, can be {@code null}
+   * @throws IOException when the task failed, or waiting for it was interrupted
+   */
+  V execute(K key, Executor executor, Task<V> task) throws IOException {
+    for(;;) {
+      Flight flight = new Flight();
+      Flight existing = flights.putIfAbsent(key, flight);
+
+      try {
+        if(existing == null) {
+          flight.join();
+          executor.execute(() -> run(key, flight, task));
+
+          return await(key, flight);
+        }
+
+        if(existing.join()) {
+          return await(key, existing);
+        }
+
+        // existing flight was abandoned just now, try again
+      }
+      catch(RetryException e) {
+        // the caller running the task on its own thread was interrupted, try again
+      }
+    }
+  }
+
+  /**
+   * Returns the number of executions in progress.
+   *
+   * @return the number of executions in progress, never negative
+   */
+  int size() {
+    return flights.size();
+  }
+
+  private void run(K key, Flight flight, Task<V> task) {
+    if(!flight.start()) {
+      return;
+    }
+
+    try {
+      V value = task.call();
+
+      flights.remove(key, flight);
+      flight.future.complete(value);
+    }
+    catch(Throwable t) {
+      if(Thread.currentThread().isInterrupted()) {
+        flight.interruptedThread = Thread.currentThread();  // published by completing the future
+      }
+
+      flights.remove(key, flight);
+      flight.future.completeExceptionally(t);
+    }
+    finally {
+      flight.finish();
+    }
+  }
+
+  private V await(K key, Flight flight) throws IOException {
+    try {
+      return flight.future.get();
+    }
+    catch(InterruptedException e) {
+      flight.leave(key);
+
+      Thread.currentThread().interrupt();
+
+      throw new InterruptedIOException("Interrupted while waiting for compilation");
+    }
+    catch(ExecutionException e) {
+      if(flight.interruptedThread != null && flight.interruptedThread != Thread.currentThread()) {
+        throw new RetryException("Execution failed as the caller running it was interrupted");
+      }
+
+      switch(e.getCause()) {
+        case IOException ioe -> throw new IOException(ioe.getMessage(), ioe);  // wrapped so the trace includes this caller
+        case RuntimeException re -> throw re;
+        case Error error -> throw error;
+        default -> throw new IllegalStateException(e.getCause());
+      }
+    }
+  }
+
+  /*
+   * A single execution, and the callers waiting for it.
+   */
+  private final class Flight {
+    final CompletableFuture<V> future = new CompletableFuture<>();
+    final ReentrantLock lock = new ReentrantLock();
+
+    int waiters;  // guarded by lock
+    Thread thread;  // guarded by lock, set while the task runs
+    Thread interruptedThread;  // set when the task failed while its thread was interrupted
+    boolean abandoned;  // guarded by lock
+
+    boolean join() {
+      lock.lock();
+
+      try {
+        if(abandoned) {
+          return false;
+        }
+
+        waiters++;
+
+        return true;
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    /*
+     * Abandons the flight when the last caller stops waiting:
+     */
+    void leave(K key) {
+      lock.lock();
+
+      try {
+        if(--waiters == 0 && !future.isDone()) {
+          abandoned = true;
+          flights.remove(key, this);
+
+          if(thread != null) {
+            thread.interrupt();
+          }
+        }
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    boolean start() {
+      lock.lock();
+
+      try {
+        thread = abandoned ? null : Thread.currentThread();
+
+        return !abandoned;
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    void finish() {
+      lock.lock();
+
+      try {
+        thread = null;
+
+        if(abandoned) {
+          Thread.interrupted();  // clears an interrupt which may have arrived after the task completed
+        }
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private static final class RetryException extends IOException {
+    RetryException(String message) {
+      super(message);
+    }
+  }
+}
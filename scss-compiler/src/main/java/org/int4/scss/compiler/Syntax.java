@@ -0,0 +1,23 @@
+package org.int4.scss.compiler;
+
+/**
+ * The syntaxes in which a stylesheet can be written.
+ */
+public enum Syntax {
+
+  /**
+   * The SCSS syntax, a superset of CSS using braces and semicolons.
+   */
+  SCSS,
+
+  /**
+   * The indented syntax, which uses indentation instead of braces and
+   * semicolons. Files in this syntax usually have the extension ".sass".
+   */
+  INDENTED,
+
+  /**
+   * Plain CSS, which is parsed without supporting any Sass features.
+   */
+  CSS
+}
@@ -0,0 +1,111 @@
+package org.int4.scss.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CompiledStylesheetTest {
+  private final CompiledStylesheet stylesheet = CompiledStylesheet.of(".a{content:\"é\"}\n");
+
+  @Test
+  void shouldProvideCSSInVariousForms() throws IOException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+    stylesheet.writeTo(stream);
+
+    assertThat(stylesheet.size()).isEqualTo(17);
+    assertThat(stylesheet.asString()).isEqualTo(".a{content:\"é\"}\n").isSameAs(stylesheet.asString());
+    assertThat(stream.toString(StandardCharsets.UTF_8)).isEqualTo(".a{content:\"é\"}\n");
+    assertThat(StandardCharsets.UTF_8.decode(stylesheet.asByteBuffer()).toString()).isEqualTo(".a{content:\"é\"}\n");
+    assertThat(stylesheet.asDataURI().toString()).isEqualTo("data:text/css;charset=UTF-8;base64,LmF7Y29udGVudDoiw6kifQo=");
+    assertThat(stylesheet.asURI()).isEqualTo(URI.create("data:text/css;charset=UTF-8;base64,LmF7Y29udGVudDoiw6kifQo="));
+  }
+
+  @Test
+  void shouldAppendDataURI() throws IOException {
+    StringWriter writer = new StringWriter();
+    StringBuilder builder = new StringBuilder("url(");
+
+    stylesheet.appendDataURITo(writer);
+    stylesheet.appendDataURITo(builder);
+
+    assertThat(writer.toString()).isEqualTo("data:text/css;charset=UTF-8;base64,LmF7Y29udGVudDoiw6kifQo=");
+    assertThat(builder.toString()).isEqualTo("url(data:text/css;charset=UTF-8;base64,LmF7Y29udGVudDoiw6kifQo=");
+    assertThatThrownBy(() -> stylesheet.appendDataURITo(null)).isInstanceOf(NullPointerException.class);
+  }
+
+  @Test
+  void shouldCompressCSS() throws IOException {
+    assertThat(decompress(new GZIPInputStream(asStream(stylesheet.gzipped())))).isEqualTo(".a{content:\"é\"}\n");
+    assertThat(decompress(new InflaterInputStream(asStream(stylesheet.deflated())))).isEqualTo(".a{content:\"é\"}\n");
+  }
+
+  @Test
+  void shouldSelectBodyForAcceptEncoding() throws IOException {
+    CompiledStylesheet large = CompiledStylesheet.of(".a{color:red}\n".repeat(100));
+
+    assertThat(large.encodedFor("gzip, deflate, br").contentEncoding()).isEqualTo("gzip");
+    assertThat(large.encodedFor("x-gzip").contentEncoding()).isEqualTo("gzip");
+    assertThat(large.encodedFor("deflate, gzip;q=0.5").contentEncoding()).isEqualTo("deflate");
+    assertThat(large.encodedFor("br, *;q=0.1").contentEncoding()).isEqualTo("gzip");
+    assertThat(large.encodedFor("gzip;q=0, deflate;q=0").contentEncoding()).isNull();
+    assertThat(large.encodedFor("gzip;q=0.5, identity").contentEncoding()).isNull();
+    assertThat(large.encodedFor("br").contentEncoding()).isNull();
+    assertThat(large.encodedFor(null).content()).isEqualTo(large.asByteBuffer());
+    assertThat(decompress(new InflaterInputStream(asStream(large.encodedFor("deflate").content())))).isEqualTo(large.asString());
+    assertThat(stylesheet.encodedFor("gzip").contentEncoding()).isNull();  // compressing does not make it smaller
+  }
+
+  @Test
+  void shouldUseGivenCompressedBody() throws IOException {
+    CompiledStylesheet original = CompiledStylesheet.of(".a{color:red}\n".repeat(100));
+    byte[] gzipped = new byte[original.gzipped().remaining()];
+
+    original.gzipped().get(gzipped);
+
+    CompiledStylesheet restored = new CompiledStylesheet(original.bytes(), gzipped);
+
+    assertThat(restored.gzipped()).isEqualTo(original.gzipped());
+    assertThat(restored.deflated()).isEqualTo(original.deflated());
+  }
+
+  @Test
+  void shouldHashContent() {
+    assertThat(stylesheet.contentHash()).hasSize(64).isEqualTo(CompiledStylesheet.of(".a{content:\"é\"}\n").contentHash());
+    assertThat(stylesheet.contentHash()).isNotEqualTo(CompiledStylesheet.of(".b{}\n").contentHash());
+    assertThat(stylesheet.entityTag()).isEqualTo("\"" + stylesheet.contentHash() + "\"");
+  }
+
+  @Test
+  void shouldNotAllowModification() {
+    assertThatThrownBy(() -> stylesheet.asByteBuffer().put(0, (byte)'x')).isInstanceOf(ReadOnlyBufferException.class);
+    assertThatThrownBy(() -> stylesheet.gzipped().put(0, (byte)'x')).isInstanceOf(ReadOnlyBufferException.class);
+  }
+
+  private static InputStream asStream(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+
+    buffer.get(bytes);
+
+    return new ByteArrayInputStream(bytes);
+  }
+
+  private static String decompress(InputStream stream) throws IOException {
+    try(stream) {
+      return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompilerEventsTest {
+
+  @Test
+  void shouldRecordCompileAndDiagnosticsEvents(@TempDir Path directory) throws IOException {
+    SCSSCompiler compiler = SCSSCompiler.builder(directory).errorsHandler(errors -> {}).build();
+    Path recordingFile = directory.resolve("recording.jfr");
+
+    try(Recording recording = new Recording()) {
+      recording.enable("org.int4.scss.Compile");
+      recording.enable("org.int4.scss.Diagnostics");
+      recording.start();
+
+      compiler.asString(directory.resolve("missing.scss"));
+
+      recording.stop();
+      recording.dump(recordingFile);
+    }
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+
+    assertThat(events).anySatisfy(event -> {
+      assertThat(event.getEventType().getName()).isEqualTo("org.int4.scss.Compile");
+      assertThat(event.getString("entry")).endsWith("missing.scss");
+      assertThat(event.getString("outcome")).isEqualTo("failed");
+      assertThat(event.getLong("outputBytes")).isZero();
+    });
+
+    assertThat(events).anySatisfy(event -> {
+      assertThat(event.getEventType().getName()).isEqualTo("org.int4.scss.Diagnostics");
+      assertThat(event.getInt("errors")).isEqualTo(1);
+      assertThat(event.getInt("warnings")).isZero();
+    });
+  }
+}
@@ -0,0 +1,264 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates deterministic trees of SCSS modules for load and scaling tests.
+ * <p>
+ * The entry stylesheet {@code main.scss} starts chains of {@code @use} rules
+ * which are {@code depth} modules long. Each level holds {@code fanOut}
+ * modules, and every module uses all modules of the next level, so modules are
+ * shared like the partials of real themes are. Every module declares a palette
+ * map, {@code mixins} mixins which include a mixin of the modules they use, and
+ * {@code loops} rules iterating over the palette with {@code @each}. Rules are
+ * repeated until the sources together reach about {@code size} bytes.
+ * <p>
+ * The same settings and seed always generate the same sources.
+ */
+final class CorpusGenerator {
+  private final long seed;
+  private final int depth;
+  private final int fanOut;
+  private final int mixins;
+  private final int loops;
+  private final int size;
+
+  /**
+   * The generated stylesheets.
+   *
+   * @param root the directory holding the stylesheets, to be used as root of the compiler, never {@code null}
+   * @param entry the entry stylesheet, never {@code null}
+   * @param modules all stylesheets, starting with the entry stylesheet, never {@code null}
+   */
+  record Corpus(Path root, Path entry, List<Path> modules) {}
+
+  private CorpusGenerator(Builder builder) {
+    this.seed = builder.seed;
+    this.depth = builder.depth;
+    this.fanOut = builder.fanOut;
+    this.mixins = builder.mixins;
+    this.loops = builder.loops;
+    this.size = builder.size;
+  }
+
+  /**
+   * Creates a new {@link Builder}.
+   *
+   * @return a new {@link Builder}, never {@code null}
+   */
+  static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Writes the stylesheets into the given directory, which is created if it
+   * does not exist.
+   *
+   * @param directory a directory, cannot be {@code null}
+   * @return the generated {@link Corpus}, never {@code null}
+   * @throws IOException when an IO error occurred
+   */
+  Corpus generate(Path directory) throws IOException {
+    Random random = new Random(seed);
+    int moduleCount = 1 + depth * fanOut;
+    int moduleSize = size / moduleCount;
+    List<Path> modules = new ArrayList<>();
+
+    Files.createDirectories(directory);
+
+    modules.add(Files.writeString(directory.resolve("main.scss"), module(random, "main", 0, moduleSize)));
+
+    for(int level = 1; level <= depth; level++) {
+      for(int index = 0; index < fanOut; index++) {
+        String name = name(level, index);
+
+        modules.add(Files.writeString(directory.resolve("_" + name + ".scss"), module(random, name, level, moduleSize)));
+      }
+    }
+
+    return new Corpus(directory, modules.get(0), List.copyOf(modules));
+  }
+
+  private String module(Random random, String name, int level, int targetSize) {
+    StringBuilder builder = new StringBuilder();
+    int usedModules = level < depth ? fanOut : 0;
+
+    builder.append("@use \"sass:color\";\n");
+
+    for(int i = 0; i < usedModules; i++) {
+      builder.append("@use \"").append(name(level + 1, i)).append("\" as d").append(i).append(";\n");
+    }
+
+    builder.append("\n$palette: (\n");
+
+    for(int i = 0; i < 4; i++) {
+      builder.append("  \"c").append(i).append("\": ").append(color(random)).append(",\n");
+    }
+
+    builder.append(");\n\n");
+
+    for(int i = 0; i < mixins; i++) {
+      builder.append("@mixin mx").append(i).append("($color, $size) {\n");
+      builder.append("  color: $color;\n");
+      builder.append("  padding: $size ($size * 2);\n");
+      builder.append("  border: 1px solid color.adjust($color, $lightness: -").append(1 + random.nextInt(20)).append("%);\n");
+
+      if(usedModules > 0) {
+        builder.append("  &:hover { @include d").append(random.nextInt(usedModules)).append(".mx").append(random.nextInt(mixins)).append("($color, $size + 1px); }\n");
+      }
+
+      builder.append("}\n\n");
+    }
+
+    for(int rule = 0; rule == 0 || builder.length() < targetSize; rule++) {
+      builder.append(".").append(name).append("-r").append(rule).append(" {\n");
+      builder.append("  margin: ").append(random.nextInt(32)).append("px;\n");
+
+      for(int i = 0; i < loops; i++) {
+        builder.append("  @each $key, $color in $palette {\n");
+        builder.append("    &-l").append(i).append("-#{$key} {\n");
+
+        if(mixins > 0) {
+          builder.append("      @include mx").append(random.nextInt(mixins)).append("($color, ").append(1 + random.nextInt(16)).append("px);\n");
+        }
+        else {
+          builder.append("      color: $color;\n");
+        }
+
+        builder.append("    }\n  }\n");
+      }
+
+      builder.append("}\n\n");
+    }
+
+    return builder.toString();
+  }
+
+  private static String name(int level, int index) {
+    return "l" + level + "m" + index;
+  }
+
+  private static String color(Random random) {
+    return String.format("#%06x", random.nextInt(0x1000000));
+  }
+
+  /**
+   * Builder for {@link CorpusGenerator}s.
+   */
+  static final class Builder {
+    private long seed = 42;
+    private int depth = 3;
+    private int fanOut = 2;
+    private int mixins = 2;
+    private int loops = 1;
+    private int size = 16 * 1024;
+
+    Builder() {}
+
+    /**
+     * Sets the seed of the random generator. Defaults to 42.
+     *
+     * @param seed a seed
+     * @return this {@link Builder}, never {@code null}
+     */
+    Builder seed(long seed) {
+      this.seed = seed;
+
+      return this;
+    }
+
+    /**
+     * Sets the length of the {@code @use} chains below the entry stylesheet.
+     * Defaults to 3.
+     *
+     * @param depth the length of the chains, cannot be negative
+     * @return this {@link Builder}, never {@code null}
+     * @throws IllegalArgumentException when {@code depth} is negative
+     */
+    Builder depth(int depth) {
+      this.depth = requireNonNegative(depth, "depth");
+
+      return this;
+    }
+
+    /**
+     * Sets the number of modules at each level, which is also the number of
+     * modules each module uses. Defaults to 2.
+     *
+     * @param fanOut the number of modules per level, must be positive
+     * @return this {@link Builder}, never {@code null}
+     * @throws IllegalArgumentException when {@code fanOut} is not positive
+     */
+    Builder fanOut(int fanOut) {
+      if(fanOut < 1) {
+        throw new IllegalArgumentException("fanOut must be positive: " + fanOut);
+      }
+
+      this.fanOut = fanOut;
+
+      return this;
+    }
+
+    /**
+     * Sets the number of mixins declared by each module. Defaults to 2.
+     *
+     * @param mixins the number of mixins, cannot be negative
+     * @return this {@link Builder}, never {@code null}
+     * @throws IllegalArgumentException when {@code mixins} is negative
+     */
+    Builder mixins(int mixins) {
+      this.mixins = requireNonNegative(mixins, "mixins");
+
+      return this;
+    }
+
+    /**
+     * Sets the number of {@code @each} loops in each rule. Defaults to 1.
+     *
+     * @param loops the number of loops, cannot be negative
+     * @return this {@link Builder}, never {@code null}
+     * @throws IllegalArgumentException when {@code loops} is negative
+     */
+    Builder loops(int loops) {
+      this.loops = requireNonNegative(loops, "loops");
+
+      return this;
+    }
+
+    /**
+     * Sets the approximate total size of the sources, in bytes. Each module has
+     * at least one rule, so the sources can be larger. Defaults to 16 KB.
+     *
+     * @param size the approximate size in bytes, cannot be negative
+     * @return this {@link Builder}, never {@code null}
+     * @throws IllegalArgumentException when {@code size} is negative
+     */
+    Builder size(int size) {
+      this.size = requireNonNegative(size, "size");
+
+      return this;
+    }
+
+    /**
+     * Creates a new {@link CorpusGenerator} with the settings of this builder.
+     *
+     * @return a new {@link CorpusGenerator}, never {@code null}
+     */
+    CorpusGenerator build() {
+      return new CorpusGenerator(this);
+    }
+
+    private static int requireNonNegative(int value, String name) {
+      if(value < 0) {
+        throw new IllegalArgumentException(name + " cannot be negative: " + value);
+      }
+
+      return value;
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.int4.scss.compiler.CorpusGenerator.Corpus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CorpusGeneratorTest {
+
+  @Test
+  void shouldGenerateSameSourcesForSameSeed(@TempDir Path directory) throws IOException {
+    CorpusGenerator generator = CorpusGenerator.builder().seed(7).build();
+    Corpus first = generator.generate(directory.resolve("first"));
+    Corpus second = generator.generate(directory.resolve("second"));
+    Corpus other = CorpusGenerator.builder().seed(8).build().generate(directory.resolve("other"));
+
+    assertThat(first.modules()).hasSameSizeAs(second.modules());
+
+    for(int i = 0; i < first.modules().size(); i++) {
+      assertThat(Files.readString(first.modules().get(i))).isEqualTo(Files.readString(second.modules().get(i)));
+    }
+
+    assertThat(Files.readString(other.entry())).isNotEqualTo(Files.readString(first.entry()));
+  }
+
+  @Test
+  void shouldGenerateModulesForEachLevel(@TempDir Path directory) throws IOException {
+    Corpus corpus = CorpusGenerator.builder().depth(4).fanOut(3).build().generate(directory);
+
+    assertThat(corpus.root()).isEqualTo(directory);
+    assertThat(corpus.entry()).isEqualTo(directory.resolve("main.scss"));
+    assertThat(corpus.modules()).hasSize(13).startsWith(corpus.entry()).contains(directory.resolve("_l4m2.scss"));
+    assertThat(Files.readString(corpus.entry())).contains("@use \"l1m0\" as d0;", "@use \"l1m2\" as d2;");
+    assertThat(Files.readString(directory.resolve("_l3m1.scss"))).contains("@use \"l4m0\" as d0;").doesNotContain("l3m0\"");
+    assertThat(Files.readString(directory.resolve("_l4m2.scss"))).doesNotContain("@use \"l");
+  }
+
+  @Test
+  void shouldControlDensityAndSize(@TempDir Path directory) throws IOException {
+    Corpus small = CorpusGenerator.builder().depth(0).mixins(0).loops(0).size(0).build().generate(directory.resolve("small"));
+    Corpus large = CorpusGenerator.builder().depth(1).mixins(5).loops(3).size(200_000).build().generate(directory.resolve("large"));
+    String entry = Files.readString(large.entry());
+    long size = 0;
+
+    for(Path module : large.modules()) {
+      size += Files.size(module);
+    }
+
+    assertThat(small.modules()).containsExactly(small.entry());
+    assertThat(Files.readString(small.entry())).doesNotContain("@mixin", "@each").contains(".main-r0 {");
+    assertThat(entry).contains("@mixin mx4(", "&-l2-#{$key}").doesNotContain("@mixin mx5(", "&-l3-");
+    assertThat(size).isBetween(200_000L, 210_000L);
+  }
+
+  @Test
+  void shouldRejectBadSettings() {
+    assertThatThrownBy(() -> CorpusGenerator.builder().depth(-1))
+      .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> CorpusGenerator.builder().fanOut(0))
+      .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> CorpusGenerator.builder().size(-1))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+}
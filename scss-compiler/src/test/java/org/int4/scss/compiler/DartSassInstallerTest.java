@@ -0,0 +1,78 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DartSassInstallerTest {
+  @TempDir
+  Path cacheDirectory;
+
+  @BeforeEach
+  void beforeEach() {
+    System.setProperty("org.int4.scss.cache.dir", cacheDirectory.toString());
+  }
+
+  @AfterEach
+  void afterEach() {
+    System.clearProperty("org.int4.scss.cache.dir");
+  }
+
+  @Test
+  void shouldReuseIntactInstallation() throws IOException {
+    Path directory = DartSassInstaller.install(SCSSCompiler.PLATFORM);
+    FileTime lastModified = Files.getLastModifiedTime(directory.resolve(".manifest"));
+
+    assertThat(directory.getParent()).isEqualTo(cacheDirectory);
+    assertThat(DartSassInstaller.install(SCSSCompiler.PLATFORM)).isEqualTo(directory);
+    assertThat(Files.getLastModifiedTime(directory.resolve(".manifest"))).isEqualTo(lastModified);
+  }
+
+  @Test
+  void shouldReplaceDamagedInstallation() throws IOException {
+    Path directory = DartSassInstaller.install(SCSSCompiler.PLATFORM);
+    List<String> manifest = Files.readAllLines(directory.resolve(".manifest"));
+    Path file = directory.resolve(manifest.get(0).substring(manifest.get(0).lastIndexOf('\t') + 1));
+
+    Files.delete(file);
+
+    assertThat(DartSassInstaller.install(SCSSCompiler.PLATFORM)).isEqualTo(directory);
+    assertThat(file).isRegularFile();
+  }
+
+  @Test
+  void shouldReplaceInstallationWithCorruptedFileOfSameSize() throws IOException {
+    Path directory = DartSassInstaller.install(SCSSCompiler.PLATFORM);
+    List<String> manifest = Files.readAllLines(directory.resolve(".manifest"));
+    Path file = directory.resolve(manifest.get(0).substring(manifest.get(0).lastIndexOf('\t') + 1));
+    byte[] original = Files.readAllBytes(file);
+    byte[] corrupted = original.clone();
+
+    corrupted[corrupted.length / 2] ^= 1;
+
+    Files.write(file, corrupted);
+
+    assertThat(DartSassInstaller.install(SCSSCompiler.PLATFORM)).isEqualTo(directory);
+    assertThat(file).hasBinaryContent(original);
+  }
+
+  @Test
+  void shouldRemoveLeftOversOfInterruptedExtractions() throws IOException {
+    Path directory = DartSassInstaller.install(SCSSCompiler.PLATFORM);
+    Path leftOver = Files.createDirectories(cacheDirectory.resolve(directory.getFileName() + ".tmp-123/dart-sass"));
+
+    Files.delete(directory.resolve(".manifest"));
+
+    assertThat(DartSassInstaller.install(SCSSCompiler.PLATFORM)).isEqualTo(directory);
+    assertThat(leftOver.getParent()).doesNotExist();
+  }
+}
@@ -0,0 +1,54 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataURITest {
+  private static final String PREFIX = "data:text/css;charset=UTF-8;base64,";
+
+  @Test
+  void shouldEncodeLikeBase64Encoder() {
+    Random random = new Random(42);
+
+    for(int length = 0; length < 100; length++) {
+      byte[] css = new byte[length];
+
+      random.nextBytes(css);
+
+      assertThat(DataURI.of(css).toString()).isEqualTo(PREFIX + Base64.getEncoder().encodeToString(css));
+    }
+  }
+
+  @Test
+  void shouldActAsCharSequence() {
+    DataURI uri = DataURI.of(".a{color:red}\n".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(uri.length()).isEqualTo(PREFIX.length() + 20);
+    assertThat(uri.charAt(0)).isEqualTo('d');
+    assertThat(uri.subSequence(PREFIX.length(), uri.length())).isEqualTo("LmF7Y29sb3I6cmVkfQo=");
+    assertThat(uri.chars().count()).isEqualTo(uri.length());
+  }
+
+  @Test
+  void shouldAppendInChunks() throws IOException {
+    byte[] css = new byte[10_000];
+
+    new Random(42).nextBytes(css);
+
+    StringWriter writer = new StringWriter();
+    StringBuilder builder = new StringBuilder("url(");
+
+    DataURI.of(css).appendTo(writer);
+    DataURI.of(css).appendTo(builder);
+
+    assertThat(writer.toString()).isEqualTo(PREFIX + Base64.getEncoder().encodeToString(css));
+    assertThat(builder.toString()).isEqualTo("url(" + PREFIX + Base64.getEncoder().encodeToString(css));
+  }
+}
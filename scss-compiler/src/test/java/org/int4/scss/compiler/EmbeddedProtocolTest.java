@@ -0,0 +1,201 @@
+package org.int4.scss.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.int4.scss.compiler.EmbeddedProtocol.CanonicalizeRequest;
+import org.int4.scss.compiler.EmbeddedProtocol.CompileRequest;
+import org.int4.scss.compiler.EmbeddedProtocol.CompileResponse;
+import org.int4.scss.compiler.EmbeddedProtocol.FileInput;
+import org.int4.scss.compiler.EmbeddedProtocol.FunctionCallRequest;
+import org.int4.scss.compiler.EmbeddedProtocol.LogEvent;
+import org.int4.scss.compiler.EmbeddedProtocol.LogEventType;
+import org.int4.scss.compiler.EmbeddedProtocol.Packet;
+import org.int4.scss.compiler.EmbeddedProtocol.StringInput;
+import org.int4.scss.compiler.EmbeddedProtocol.UnsupportedMessage;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EmbeddedProtocolTest {
+
+  @Test
+  void shouldReadCompileResponse() throws IOException {
+    ProtobufWriter message = new ProtobufWriter().writeMessage(2, new ProtobufWriter()
+      .writeMessage(2, new ProtobufWriter().writeString(1, ".a{color:red}"))
+      .writeString(4, "file:///styles/a.scss")
+      .writeString(4, "file:///styles/_colors.scss")
+    );
+
+    Packet packet = EmbeddedProtocol.readPacket(toStream(300, message));
+
+    assertThat(packet.compilationId()).isEqualTo(300);
+    assertThat(packet.message()).isInstanceOfSatisfying(CompileResponse.class, response -> {
+      assertThat(response.css()).asString(StandardCharsets.UTF_8).isEqualTo(".a{color:red}\n");
+      assertThat(response.failure()).isNull();
+      assertThat(response.loadedUrls()).containsExactly("file:///styles/a.scss", "file:///styles/_colors.scss");
+    });
+  }
+
+  @Test
+  void shouldReadEmptyCompileResponseWithoutNewline() throws IOException {
+    ProtobufWriter message = new ProtobufWriter().writeMessage(2, new ProtobufWriter()
+      .writeMessage(2, new ProtobufWriter().writeString(1, ""))
+    );
+
+    Packet packet = EmbeddedProtocol.readPacket(toStream(300, message));
+
+    assertThat(packet.message()).isInstanceOfSatisfying(CompileResponse.class, response -> assertThat(response.css()).isEmpty());
+  }
+
+  @Test
+  void shouldReadCompileFailure() throws IOException {
+    ProtobufWriter message = new ProtobufWriter().writeMessage(2, new ProtobufWriter()
+      .writeMessage(3, new ProtobufWriter().writeString(1, "Undefined variable.").writeString(4, "Error: Undefined variable."))
+    );
+
+    Packet packet = EmbeddedProtocol.readPacket(toStream(1, message));
+
+    assertThat(packet.message()).isInstanceOfSatisfying(CompileResponse.class, response -> {
+      assertThat(response.isSuccess()).isFalse();
+      assertThat(response.failure()).isEqualTo("Error: Undefined variable.");
+    });
+  }
+
+  @Test
+  void shouldReadLogEvents() throws IOException {
+    ProtobufWriter message = new ProtobufWriter().writeMessage(4, new ProtobufWriter()
+      .writeUInt(2, 1)
+      .writeString(3, "Global built-in functions are deprecated")
+      .writeString(6, "DEPRECATION WARNING [global-builtin]: Global built-in functions are deprecated")
+    );
+
+    Packet packet = EmbeddedProtocol.readPacket(toStream(2, message));
+
+    assertThat(packet.message()).isEqualTo(new LogEvent(LogEventType.DEPRECATION_WARNING, "Global built-in functions are deprecated", "DEPRECATION WARNING [global-builtin]: Global built-in functions are deprecated"));
+  }
+
+  @Test
+  void shouldSkipUnsupportedMessages() throws IOException {
+    ProtobufWriter message = new ProtobufWriter().writeMessage(42, new ProtobufWriter().writeDouble(1, 2.5).writeString(2, "x"));
+
+    assertThat(EmbeddedProtocol.readPacket(toStream(2, message)).message()).isEqualTo(new UnsupportedMessage(42));
+  }
+
+  @Test
+  void shouldReturnNullAtEndOfStream() throws IOException {
+    assertThat(EmbeddedProtocol.readPacket(new ByteArrayInputStream(new byte[0]))).isNull();
+  }
+
+  @Test
+  void shouldRejectTruncatedPackets() throws IOException {
+    byte[] data = toStream(5, EmbeddedProtocol.versionRequest(1)).readAllBytes();
+
+    assertThatThrownBy(() -> EmbeddedProtocol.readPacket(new ByteArrayInputStream(data, 0, data.length - 1)))
+      .isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void shouldWriteCompileRequest() throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    EmbeddedProtocol.writePacket(outputStream, 129, EmbeddedProtocol.compileRequest(new CompileRequest(new FileInput(Path.of("a.scss")), List.of(), List.of(Path.of("styles")), List.of())));
+
+    ProtobufReader reader = new ProtobufReader(outputStream.toByteArray());
+
+    assertThat(reader.readVarint()).isEqualTo(outputStream.size() - 1);
+    assertThat(reader.readVarint()).isEqualTo(129);
+    assertThat(reader.readTag()).isEqualTo(2 << 3 | 2);
+
+    ProtobufReader request = reader.readMessage();
+
+    assertThat(reader.hasRemaining()).isFalse();
+    assertThat(request.readTag()).isEqualTo(3 << 3 | 2);
+    assertThat(request.readString()).isEqualTo("a.scss");
+  }
+
+  @Test
+  void shouldWriteCompileRequestWithStringInput() throws IOException {
+    ProtobufReader reader = new ProtobufReader(EmbeddedProtocol.compileRequest(new CompileRequest(new StringInput(".a { b: c }", Syntax.INDENTED, Path.of("styles")), List.of(), List.of(), List.of())).toByteArray());
+
+    assertThat(reader.readTag()).isEqualTo(2 << 3 | 2);
+
+    ProtobufReader request = reader.readMessage();
+
+    assertThat(request.readTag()).isEqualTo(2 << 3 | 2);
+
+    ProtobufReader input = request.readMessage();
+
+    assertThat(input.readTag()).isEqualTo(1 << 3 | 2);
+    assertThat(input.readString()).isEqualTo(".a { b: c }");
+    assertThat(input.readTag()).isEqualTo(3 << 3);
+    assertThat(input.readUInt32()).isEqualTo(1);
+    assertThat(input.readTag()).isEqualTo(4 << 3 | 2);
+
+    ProtobufReader importer = input.readMessage();
+
+    assertThat(importer.readTag()).isEqualTo(1 << 3 | 2);
+    assertThat(importer.readString()).isEqualTo("styles");
+  }
+
+  @Test
+  void shouldReadCanonicalizeRequest() throws IOException {
+    ProtobufWriter message = new ProtobufWriter().writeMessage(5, new ProtobufWriter()
+      .writeUInt(1, 7)
+      .writeUInt(3, 1)
+      .writeString(4, "colors")
+      .writeBool(5, true)
+    );
+
+    assertThat(EmbeddedProtocol.readPacket(toStream(3, message)).message()).isEqualTo(new CanonicalizeRequest(7, 1, "colors", true));
+  }
+
+  @Test
+  void shouldReadFunctionCallRequest() throws IOException {
+    ProtobufWriter message = new ProtobufWriter().writeMessage(8, new ProtobufWriter()
+      .writeUInt(1, 9)
+      .writeString(2, "brand-color")
+      .writeMessage(4, SassValueCodec.encode(new SassValue.SassString("primary", true)))
+    );
+
+    assertThat(EmbeddedProtocol.readPacket(toStream(3, message)).message()).isInstanceOfSatisfying(FunctionCallRequest.class, request -> {
+      assertThat(request.id()).isEqualTo(9);
+      assertThat(request.name()).isEqualTo("brand-color");
+      assertThat(request.arguments()).hasSize(1);
+    });
+  }
+
+  @Test
+  void shouldWriteImportResponse() throws IOException {
+    ProtobufReader reader = new ProtobufReader(EmbeddedProtocol.importResponse(7, new Importer.Stylesheet(".a\n  b: c", Syntax.INDENTED), null).toByteArray());
+
+    assertThat(reader.readTag()).isEqualTo(4 << 3 | 2);
+
+    ProtobufReader response = reader.readMessage();
+
+    assertThat(response.readTag()).isEqualTo(1 << 3);
+    assertThat(response.readUInt32()).isEqualTo(7);
+    assertThat(response.readTag()).isEqualTo(2 << 3 | 2);
+
+    ProtobufReader success = response.readMessage();
+
+    assertThat(success.readTag()).isEqualTo(1 << 3 | 2);
+    assertThat(success.readString()).isEqualTo(".a\n  b: c");
+    assertThat(success.readTag()).isEqualTo(2 << 3);
+    assertThat(success.readUInt32()).isEqualTo(1);
+    assertThat(response.hasRemaining()).isFalse();
+  }
+
+  private static ByteArrayInputStream toStream(int compilationId, ProtobufWriter message) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    EmbeddedProtocol.writePacket(outputStream, compilationId, message);
+
+    return new ByteArrayInputStream(outputStream.toByteArray());
+  }
+}
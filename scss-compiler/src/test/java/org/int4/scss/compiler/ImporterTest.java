@@ -0,0 +1,142 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.int4.scss.compiler.Importer.Stylesheet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ImporterTest {
+
+  @TempDir
+  Path directory;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    write("styles/_colors.scss", "$primary: red;");
+    write("styles/layout.sass", ".a\n  b: c");
+    write("styles/reset.css", "a { b: c }");
+    write("styles/buttons/_index.scss", ".button { b: c }");
+    write("styles/legacy.scss", ".legacy { b: c }");
+    write("styles/legacy.import.scss", ".legacy-import { b: c }");
+    write("styles/ambiguous.scss", "");
+    write("styles/_ambiguous.scss", "");
+    write("outside.scss", "");
+  }
+
+  @Nested
+  class GivenAPathImporter {
+    Importer importer;
+
+    @BeforeEach
+    void beforeEach() {
+      importer = Importer.ofPath(directory.resolve("styles"));
+    }
+
+    @Test
+    void shouldResolvePartialsAndExtensions() throws IOException {
+      assertThat(importer.canonicalize("colors", false)).isEqualTo(directory.resolve("styles/_colors.scss").toUri());
+      assertThat(importer.canonicalize("_colors.scss", false)).isEqualTo(directory.resolve("styles/_colors.scss").toUri());
+      assertThat(importer.canonicalize("layout", false)).isEqualTo(directory.resolve("styles/layout.sass").toUri());
+      assertThat(importer.canonicalize("reset", false)).isEqualTo(directory.resolve("styles/reset.css").toUri());
+    }
+
+    @Test
+    void shouldResolveIndexFiles() throws IOException {
+      assertThat(importer.canonicalize("buttons", false)).isEqualTo(directory.resolve("styles/buttons/_index.scss").toUri());
+    }
+
+    @Test
+    void shouldPreferImportOnlyFilesForImports() throws IOException {
+      assertThat(importer.canonicalize("legacy", false)).isEqualTo(directory.resolve("styles/legacy.scss").toUri());
+      assertThat(importer.canonicalize("legacy", true)).isEqualTo(directory.resolve("styles/legacy.import.scss").toUri());
+    }
+
+    @Test
+    void shouldResolveAbsoluteURLsBelongingToImporter() throws IOException {
+      URI url = directory.resolve("styles/buttons/_index.scss").toUri().resolve("../colors");
+
+      assertThat(importer.canonicalize(url.toString(), false)).isEqualTo(directory.resolve("styles/_colors.scss").toUri());
+    }
+
+    @Test
+    void shouldNotResolveUnknownURLs() throws IOException {
+      assertThat(importer.canonicalize("missing", false)).isNull();
+      assertThat(importer.canonicalize("../outside", false)).isNull();
+      assertThat(importer.canonicalize("https://example.com/colors.scss", false)).isNull();
+    }
+
+    @Test
+    void shouldRejectAmbiguousURLs() {
+      assertThatThrownBy(() -> importer.canonicalize("ambiguous", false))
+        .isInstanceOf(IOException.class)
+        .hasMessageStartingWith("It's not clear which file to import");
+    }
+
+    @Test
+    void shouldLoadStylesheetsWithTheirSyntax() throws IOException {
+      assertThat(importer.load(importer.canonicalize("colors", false))).isEqualTo(new Stylesheet("$primary: red;", Syntax.SCSS));
+      assertThat(importer.load(importer.canonicalize("layout", false))).isEqualTo(new Stylesheet(".a\n  b: c", Syntax.INDENTED));
+      assertThat(importer.load(importer.canonicalize("reset", false))).isEqualTo(new Stylesheet("a { b: c }", Syntax.CSS));
+    }
+
+    @Test
+    void shouldCacheLookups() throws IOException {
+      URI url = importer.canonicalize("colors", false);
+
+      importer.load(url);
+
+      Files.delete(directory.resolve("styles/_colors.scss"));
+
+      assertThat(importer.canonicalize("colors", false)).isEqualTo(url);
+      assertThat(importer.load(url)).isEqualTo(new Stylesheet("$primary: red;", Syntax.SCSS));
+    }
+  }
+
+  @Nested
+  class GivenAClasspathImporter {
+    Importer importer;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+      importer = Importer.ofClasspath(new URLClassLoader(new URL[] {directory.toUri().toURL()}, null), "styles");
+    }
+
+    @Test
+    void shouldResolveResources() throws IOException {
+      assertThat(importer.canonicalize("colors", false)).isEqualTo(URI.create("classpath:/styles/_colors.scss"));
+      assertThat(importer.canonicalize("buttons", false)).isEqualTo(URI.create("classpath:/styles/buttons/_index.scss"));
+      assertThat(importer.canonicalize("classpath:/styles/buttons/../colors", false)).isEqualTo(URI.create("classpath:/styles/_colors.scss"));
+    }
+
+    @Test
+    void shouldNotResolveUnknownURLs() throws IOException {
+      assertThat(importer.canonicalize("missing", false)).isNull();
+      assertThat(importer.canonicalize("../outside", false)).isNull();
+      assertThat(importer.canonicalize("classpath:/outside", false)).isNull();
+    }
+
+    @Test
+    void shouldLoadResources() throws IOException {
+      assertThat(importer.load(URI.create("classpath:/styles/_colors.scss"))).isEqualTo(new Stylesheet("$primary: red;", Syntax.SCSS));
+      assertThat(importer.load(URI.create("classpath:/styles/_missing.scss"))).isNull();
+    }
+  }
+
+  private void write(String name, String content) throws IOException {
+    Path path = directory.resolve(name);
+
+    Files.createDirectories(path.getParent());
+    Files.writeString(path, content);
+  }
+}
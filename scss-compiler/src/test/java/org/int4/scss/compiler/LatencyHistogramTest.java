@@ -0,0 +1,53 @@
+package org.int4.scss.compiler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+  private final LatencyHistogram histogram = new LatencyHistogram();
+
+  @Test
+  void shouldReportZeroWhenEmpty() {
+    assertThat(histogram.count()).isZero();
+    assertThat(histogram.mean()).isZero();
+    assertThat(histogram.max()).isZero();
+    assertThat(histogram.percentile(0.99)).isZero();
+  }
+
+  @Test
+  void shouldReportPercentilesWithinRelativeError() {
+    for(int i = 1; i <= 1000; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+    }
+
+    assertThat(histogram.count()).isEqualTo(1000);
+    assertThat(histogram.mean()).isEqualTo(TimeUnit.MICROSECONDS.toNanos(500500));
+    assertThat(histogram.max()).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+    assertThat((double)histogram.percentile(0.5)).isCloseTo(TimeUnit.MILLISECONDS.toNanos(500), within(TimeUnit.MILLISECONDS.toNanos(500) * 0.125));
+    assertThat((double)histogram.percentile(0.9)).isCloseTo(TimeUnit.MILLISECONDS.toNanos(900), within(TimeUnit.MILLISECONDS.toNanos(900) * 0.125));
+    assertThat((double)histogram.percentile(0.99)).isCloseTo(TimeUnit.MILLISECONDS.toNanos(990), within(TimeUnit.MILLISECONDS.toNanos(990) * 0.125));
+    assertThat(histogram.percentile(0.999)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+    assertThat(histogram.percentile(1)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Test
+  void shouldNeverReportMoreThanMaximum() {
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(1001));
+
+    assertThat(histogram.percentile(0.5)).isEqualTo(TimeUnit.MICROSECONDS.toNanos(1001));
+  }
+
+  @Test
+  void shouldRecordExtremeDurations() {
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+
+    assertThat(histogram.count()).isEqualTo(2);
+    assertThat(histogram.percentile(0.5)).isEqualTo(999);
+    assertThat(histogram.percentile(1)).isGreaterThan(TimeUnit.DAYS.toNanos(10));
+  }
+}
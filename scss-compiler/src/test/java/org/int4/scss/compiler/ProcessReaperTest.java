@@ -0,0 +1,64 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisabledOnOs(OS.WINDOWS)
+public class ProcessReaperTest {
+  private final int initialCount = ProcessReaper.count();  // other tests may leave compiler processes running
+
+  @Test
+  void shouldDestroyProcessIncludingDescendants() throws Exception {
+    Process process = ProcessReaper.register(new ProcessBuilder("sh", "-c", "sleep 60 & wait").start());
+
+    assertThat(ProcessReaper.count()).isEqualTo(initialCount + 1);
+
+    List<ProcessHandle> descendants = awaitDescendants(process);
+
+    ProcessReaper.destroy(process);
+
+    assertThat(process.onExit()).succeedsWithin(10, TimeUnit.SECONDS);
+
+    for(ProcessHandle descendant : descendants) {
+      assertThat(descendant.onExit()).succeedsWithin(10, TimeUnit.SECONDS);
+    }
+
+    awaitCount(initialCount);
+  }
+
+  @Test
+  void shouldForgetProcessWhichExited() throws Exception {
+    Process process = ProcessReaper.register(new ProcessBuilder("sh", "-c", "exit 0").start());
+
+    assertThat(process.onExit()).succeedsWithin(10, TimeUnit.SECONDS);
+
+    awaitCount(initialCount);
+  }
+
+  private static List<ProcessHandle> awaitDescendants(Process process) throws InterruptedException {
+    for(int i = 0; i < 1000 && process.descendants().findAny().isEmpty(); i++) {
+      Thread.sleep(10);
+    }
+
+    List<ProcessHandle> descendants = process.descendants().toList();
+
+    assertThat(descendants).isNotEmpty();
+
+    return descendants;
+  }
+
+  private static void awaitCount(int count) throws InterruptedException {
+    for(int i = 0; i < 1000 && ProcessReaper.count() != count; i++) {
+      Thread.sleep(10);
+    }
+
+    assertThat(ProcessReaper.count()).isEqualTo(count);
+  }
+}
@@ -0,0 +1,215 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.int4.scss.compiler.EmbeddedProtocol.CompileRequest;
+import org.int4.scss.compiler.EmbeddedProtocol.FileInput;
+import org.int4.scss.compiler.EmbeddedProtocol.LogEvent;
+import org.int4.scss.compiler.EmbeddedProtocol.LogEventType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SCSSCacheTest {
+  private static final long START = System.currentTimeMillis();
+
+  @TempDir
+  Path directory;
+
+  SCSSCache cache = SCSSCache.builder().maxBytes(4096).build();
+  Path styles;
+  Path colors;
+  SCSSCache.Key key;
+  SCSSCache.Result result;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    styles = write("styles.scss", "@use 'colors'; .a { color: colors.$primary; }");
+    colors = write("_colors.scss", "$primary: red;");
+    key = SCSSCache.keyOf(new CompileRequest(new FileInput(styles), List.of(), List.of(directory), List.of()));
+    result = resultOf(".a{color:red}\n", styles.toUri().toString(), colors.toUri().toString());
+  }
+
+  @Test
+  void shouldReturnCachedResultWhenDependenciesAreUnchanged() {
+    cache.put(key, result, START);
+
+    assertThat(cache.get(key)).isEqualTo(result);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(cache.getSize()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldNotReturnResultWhenDependencyChanged() throws IOException {
+    cache.put(key, result, START);
+
+    Files.writeString(colors, "$primary: blue;");
+
+    assertThat(cache.get(key)).isNull();
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(cache.getSize()).isZero();
+  }
+
+  @Test
+  void shouldReturnResultWhenOnlyModificationTimeChanged() throws IOException {
+    cache.put(key, result, START);
+
+    Files.setLastModifiedTime(colors, FileTime.fromMillis(START - 1000));
+
+    assertThat(cache.get(key)).isEqualTo(result);
+  }
+
+  @Test
+  void shouldNotCacheResultsOfNonFileStylesheets() {
+    cache.put(key, withLoadedUrls(result, styles.toUri().toString(), "classpath:/styles/_colors.scss"), START);
+
+    assertThat(cache.get(key)).isNull();
+  }
+
+  @Test
+  void shouldNotCacheResultsWhenStylesheetWasModifiedDuringCompilation() {
+    cache.put(key, withLoadedUrls(result, styles.toUri().toString()), START - 60_000);
+
+    assertThat(cache.get(key)).isNull();
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsedResults() throws IOException {
+    SCSSCache.Key otherKey = SCSSCache.keyOf(new CompileRequest(new FileInput(colors), List.of(), List.of(directory), List.of()));
+    SCSSCache.Result largeResult = resultOf("x".repeat(2500), colors.toUri().toString());
+
+    cache.put(key, withLoadedUrls(largeResult, styles.toUri().toString()), START);
+    cache.put(otherKey, largeResult, START);
+
+    assertThat(cache.get(key)).isNull();
+    assertThat(cache.get(otherKey)).isEqualTo(largeResult);
+    assertThat(cache.getBytes()).isLessThanOrEqualTo(4096);
+  }
+
+  @Test
+  void shouldCountRepresentationsDerivedAfterCaching() {
+    cache.put(key, result, START);
+
+    long bytes = cache.getBytes();
+
+    result.stylesheet().asString();
+
+    assertThat(cache.getBytes()).isEqualTo(bytes + 2 * ".a{color:red}\n".length());
+
+    result.stylesheet().gzipped();
+
+    assertThat(cache.getBytes()).isEqualTo(bytes + 2 * ".a{color:red}\n".length() + result.stylesheet().gzipped().remaining());
+  }
+
+  @Test
+  void shouldEvictResultWhenDerivedRepresentationsExceedMaximumBytes() {
+    SCSSCache.Result largeResult = resultOf("x".repeat(1500), styles.toUri().toString(), colors.toUri().toString());
+
+    cache.put(key, largeResult, START);
+
+    assertThat(cache.get(key)).isEqualTo(largeResult);
+
+    largeResult.stylesheet().asString();
+    largeResult.stylesheet().asDataURI();
+
+    assertThat(cache.getSize()).isZero();
+    assertThat(cache.getBytes()).isZero();
+
+    largeResult.stylesheet().gzipped();  // no longer accounted for by the cache
+
+    assertThat(cache.getBytes()).isZero();
+  }
+
+  @Test
+  void shouldNotCacheResultsOfCompilersWithFunctions() {
+    assertThat(SCSSCache.keyOf(new CompileRequest(new FileInput(styles), List.of(), List.of(directory), List.of(new EmbeddedProtocol.HostFunction("f()", args -> SassValue.NULL))))).isNull();
+  }
+
+  @Test
+  void shouldServeResultsStoredInDirectoryAfterRestart() {
+    Path cacheDirectory = directory.resolve("cache");
+
+    SCSSCache.builder().directory(cacheDirectory).build().put(key, result, START);
+
+    SCSSCache restartedCache = SCSSCache.builder().directory(cacheDirectory).build();
+
+    assertThat(restartedCache.get(key)).isEqualTo(result);
+    assertThat(restartedCache.getSize()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldNotServeResultsStoredInDirectoryWhenDependencyChanged() throws IOException {
+    Path cacheDirectory = directory.resolve("cache");
+
+    SCSSCache.builder().directory(cacheDirectory).build().put(key, result, START);
+
+    Files.writeString(colors, "$primary: blue;");
+
+    assertThat(SCSSCache.builder().directory(cacheDirectory).build().get(key)).isNull();
+  }
+
+  @Test
+  void shouldDeleteDamagedResultsStoredInDirectory() throws IOException {
+    Path cacheDirectory = directory.resolve("cache");
+
+    SCSSCache.builder().directory(cacheDirectory).build().put(key, withLoadedUrls(result, styles.toUri().toString()), START);
+
+    try(Stream<Path> stream = Files.list(cacheDirectory)) {
+      for(Path path : stream.filter(p -> p.toString().endsWith(".css.gz")).toList()) {
+        Files.writeString(path, "damaged");
+      }
+    }
+
+    assertThat(SCSSCache.builder().directory(cacheDirectory).build().get(key)).isNull();
+    assertThat(cacheDirectory).isEmptyDirectory();
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsedResultsStoredInDirectory() throws IOException {
+    Path cacheDirectory = directory.resolve("cache");
+    SCSSCache.Key otherKey = SCSSCache.keyOf(new CompileRequest(new FileInput(colors), List.of(), List.of(directory), List.of()));
+    SCSSCache.Result largeResult = resultOf(new Random(42).ints(2000).mapToObj(Integer::toString).collect(Collectors.joining()), colors.toUri().toString());
+    SCSSCache diskCache = SCSSCache.builder().directory(cacheDirectory).maxDiskBytes(12_000).build();
+
+    diskCache.put(key, withLoadedUrls(largeResult, styles.toUri().toString()), START);
+
+    try(Stream<Path> stream = Files.list(cacheDirectory)) {
+      for(Path path : stream.toList()) {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(START - 1000));  // make sure it is the least recently used
+      }
+    }
+
+    diskCache.put(otherKey, largeResult, START);
+
+    SCSSCache restartedCache = SCSSCache.builder().directory(cacheDirectory).build();
+
+    assertThat(restartedCache.get(key)).isNull();
+    assertThat(restartedCache.get(otherKey)).isEqualTo(largeResult);
+  }
+
+  private Path write(String name, String content) throws IOException {
+    Path path = directory.resolve(name);
+
+    Files.writeString(path, content);
+    Files.setLastModifiedTime(path, FileTime.fromMillis(START - 10_000));
+
+    return path;
+  }
+
+  private static SCSSCache.Result resultOf(String css, String... loadedUrls) {
+    return new SCSSCache.Result(CompiledStylesheet.of(css), List.of(new LogEvent(LogEventType.WARNING, "w", "WARNING: w")), List.of(loadedUrls));
+  }
+
+  private static SCSSCache.Result withLoadedUrls(SCSSCache.Result result, String... loadedUrls) {
+    return new SCSSCache.Result(result.stylesheet(), result.logEvents(), List.of(loadedUrls));
+  }
+}
@@ -1,13 +1,34 @@
 package org.int4.scss.compiler;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
+import org.int4.scss.compiler.CompileResult.Status;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -22,6 +43,242 @@ public class SCSSCompilerTest {
     assertThat(result).isEqualTo(".container{color:red}.container .header{background-color:red}\n");
   }
 
+  @Test
+  void shouldPrepareCompiler() throws Exception {
+    assertThat(SCSSCompiler.prepare()).succeedsWithin(Duration.ofMinutes(1));
+  }
+
+  @Test
+  void shouldResolveImportsWithImporters() throws IOException {
+    SCSSCompiler compiler = SCSSCompiler.builder(Path.of("src"))
+      .importers(List.of(Importer.ofPath(root)))
+      .build();
+
+    String result = compiler.asString("@use \"colors\";\n.container { color: colors.$primary-color; }", Syntax.SCSS);
+
+    assertThat(result).isEqualTo(".container{color:red}\n");
+  }
+
+  @Test
+  void shouldCallFunctionsImplementedInJava() throws IOException {
+    SCSSCompiler compiler = SCSSCompiler.builder(root)
+      .functions(Map.of("spacing($step)", args -> SassValue.SassNumber.of(((SassValue.SassNumber)args.get(0)).value() * 4, "px")))
+      .build();
+
+    String result = compiler.asString(".a { margin: spacing(2); }", Syntax.SCSS);
+
+    assertThat(result).isEqualTo(".a{margin:8px}\n");
+  }
+
+  @Test
+  void shouldCompileAsynchronouslyOnGivenExecutor() {
+    AtomicInteger executions = new AtomicInteger();
+    SCSSCompiler compiler = SCSSCompiler.builder(root)
+      .executor(runnable -> {
+        executions.incrementAndGet();
+        SCSSCompiler.EXECUTOR.execute(runnable);
+      })
+      .maxConcurrentCompilations(1)
+      .build();
+
+    CompletableFuture<String> css = compiler.asStringAsync(root.resolve("org/int4/scss/styles.scss"));
+    CompletableFuture<String> uri = compiler.asURIStringAsync(".a { color: red; }", Syntax.SCSS);
+    CompletableFuture<String> bad = compiler.asStringAsync(root.resolve("org/int4/scss/bad.scss"));
+
+    assertThat(css).succeedsWithin(Duration.ofMinutes(1)).isEqualTo(".container{color:red}.container .header{background-color:red}\n");
+    assertThat(uri).succeedsWithin(Duration.ofMinutes(1)).isEqualTo("data:text/css;charset=UTF-8;base64,LmF7Y29sb3I6cmVkfQo=");
+    assertThat(bad).failsWithin(Duration.ofMinutes(1)).withThrowableThat().havingCause().isInstanceOf(SCSSProcessingException.class);
+    assertThat(executions).hasValue(3);  // the compilations run on the threads of the asynchronous calls
+  }
+
+  @Test
+  void shouldLimitConcurrentCompilationsAndStartWaitingOnesInOrder() throws InterruptedException {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    List<Integer> started = new CopyOnWriteArrayList<>();
+    Semaphore proceed = new Semaphore(0);
+    SCSSCompiler compiler = SCSSCompiler.builder(root)
+      .functions(Map.of("block($n)", args -> {
+        started.add((int)((SassValue.SassNumber)args.get(0)).value());
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        proceed.acquireUninterruptibly();
+        running.decrementAndGet();
+
+        return args.get(0);
+      }))
+      .maxConcurrentCompilations(2)
+      .build();
+
+    List<CompletableFuture<String>> futures = new ArrayList<>();
+
+    for(int i = 0; i < 6; i++) {
+      futures.add(compiler.asStringAsync(".a" + i + " { width: block(" + i + "); }", Syntax.SCSS));
+
+      // Wait until the compilation runs, or waits, so the next one is requested after it:
+      int runningCount = Math.min(i + 1, 2);
+      int waitingCount = i + 1 - runningCount;
+
+      for(int j = 0; j < 1000 && (started.size() < runningCount || compiler.waitingCompilations() < waitingCount); j++) {
+        Thread.sleep(10);
+      }
+
+      assertThat(started).hasSize(runningCount);
+      assertThat(compiler.waitingCompilations()).isEqualTo(waitingCount);
+    }
+
+    // Completing one compilation at a time lets exactly one waiting compilation start:
+    for(int i = 2; i < 6; i++) {
+      proceed.release();
+
+      for(int j = 0; j < 1000 && started.size() <= i; j++) {
+        Thread.sleep(10);
+      }
+
+      assertThat(started).hasSize(i + 1);
+    }
+
+    proceed.release(2);
+
+    for(int i = 0; i < 6; i++) {
+      assertThat(futures.get(i)).succeedsWithin(Duration.ofMinutes(1)).isEqualTo(".a" + i + "{width:" + i + "}\n");
+    }
+
+    assertThat(maxRunning).hasValue(2);
+    assertThat(started).containsExactly(0, 1, 2, 3, 4, 5);
+  }
+
+  @Test
+  void shouldStopCompilationWhichTimedOut() throws IOException {
+    SCSSCompiler compiler = SCSSCompiler.builder(root).timeout(Duration.ofSeconds(2)).build();
+
+    assertThatThrownBy(() -> compiler.asString("$i: 0; @while true { $i: $i + 1; }", Syntax.SCSS))
+      .isInstanceOf(IOException.class)
+      .hasMessageStartingWith("Timed out after PT2S compiling");
+
+    assertThat(compiler.asString(".a { color: red; }", Syntax.SCSS)).isEqualTo(".a{color:red}\n");
+  }
+
+  @Test
+  void shouldCompileManyFiles(@TempDir Path output) throws IOException {
+    SCSSCompiler compiler = SCSSCompiler.of(root);
+    Map<Path, Path> files = new LinkedHashMap<>();
+
+    files.put(root.resolve("org/int4/scss/styles.scss"), output.resolve("styles.css"));
+    files.put(root.resolve("org/int4/scss/bad.scss"), output.resolve("bad.css"));
+    files.put(root.resolve("org/int4/scss/warn.scss"), output.resolve("nested/warn.css"));
+
+    Map<Path, CompileResult> results = compiler.compileAll(files);
+
+    assertThat(results.values()).extracting(CompileResult::status).containsExactly(Status.WRITTEN, Status.FAILED, Status.WRITTEN);
+    assertThat(results.get(root.resolve("org/int4/scss/bad.scss")).errors()).singleElement().asString().startsWith("Error: Undefined variable.");
+    assertThat(results.get(root.resolve("org/int4/scss/warn.scss")).warnings()).hasSize(1);
+    assertThat(Files.readString(output.resolve("styles.css"))).isEqualTo(".container{color:red}.container .header{background-color:red}\n");
+    assertThat(output.resolve("bad.css")).doesNotExist();
+
+    assertThat(compiler.compileAll(files).values()).extracting(CompileResult::status).containsExactly(Status.UNCHANGED, Status.FAILED, Status.UNCHANGED);
+  }
+
+  @Nested
+  class GivenAnEndlessCompilation {
+    static final String ENDLESS = ".a { width: started(); }\n$i: 0; @while true { $i: $i + 1; }";
+
+    final int initialCount = ProcessReaper.count();  // other tests may leave compiler processes running
+    final Set<ProcessHandle> initialChildren = ProcessHandle.current().children().collect(Collectors.toSet());
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CompletableFuture<Void> release = new CompletableFuture<>();
+    final AtomicInteger blockCalls = new AtomicInteger();
+    final SCSSEngine engine = SCSSEngine.builder().maxProcesses(1).maxCompilationsPerProcess(2).build();
+    final SCSSCompiler compiler = SCSSCompiler.builder(root)
+      .engine(engine)
+      .functions(Map.of(
+        "started()", args -> {
+          started.countDown();
+
+          return SassValue.NULL;
+        },
+        "block($n)", args -> {
+          blockCalls.incrementAndGet();
+          blocked.countDown();
+          release.join();
+
+          return args.get(0);
+        }
+      ))
+      .build();
+
+    @AfterEach
+    void afterEach() throws InterruptedException {
+      release.complete(null);
+      engine.close();
+
+      for(int i = 0; i < 1000 && ProcessReaper.count() != initialCount; i++) {
+        Thread.sleep(10);
+      }
+
+      assertThat(ProcessReaper.count()).isEqualTo(initialCount);
+    }
+
+    @Test
+    void shouldDestroyProcessWhenCallerIsInterrupted() throws InterruptedException {
+      CompletableFuture<Throwable> failure = new CompletableFuture<>();
+      Thread caller = Thread.ofVirtual().start(() -> {
+        try {
+          compiler.asString(ENDLESS, Syntax.SCSS);
+        }
+        catch(Throwable t) {
+          failure.complete(t);
+        }
+      });
+
+      ProcessHandle process = awaitStartedProcess();
+
+      caller.interrupt();
+
+      assertThat(failure).succeedsWithin(Duration.ofMinutes(1)).isInstanceOf(InterruptedIOException.class);
+      assertThat(process.onExit()).succeedsWithin(Duration.ofMinutes(1));
+    }
+
+    @Test
+    void shouldDestroyProcessWhenAsyncCompilationIsCancelled() throws InterruptedException {
+      CompletableFuture<String> css = compiler.asStringAsync(ENDLESS, Syntax.SCSS);
+      ProcessHandle process = awaitStartedProcess();
+
+      assertThat(css.cancel(true)).isTrue();
+      assertThat(process.onExit()).succeedsWithin(Duration.ofMinutes(1));
+    }
+
+    @Test
+    void shouldRetryOtherCompilationsOfDestroyedProcess() throws InterruptedException {
+      CompletableFuture<String> neighbour = compiler.asStringAsync(".n { width: block(1); }", Syntax.SCSS);
+
+      assertThat(blocked.await(1, TimeUnit.MINUTES)).isTrue();
+
+      CompletableFuture<String> css = compiler.asStringAsync(ENDLESS, Syntax.SCSS);
+      ProcessHandle process = awaitStartedProcess();
+
+      css.cancel(true);
+
+      assertThat(process.onExit()).succeedsWithin(Duration.ofMinutes(1));
+
+      release.complete(null);
+
+      assertThat(neighbour).succeedsWithin(Duration.ofMinutes(1)).isEqualTo(".n{width:1}\n");
+      assertThat(blockCalls).hasValue(2);  // called again by the retried compilation
+    }
+
+    /*
+     * Waits until the endless compilation is running, and returns the only
+     * compiler process of the engine.
+     */
+    private ProcessHandle awaitStartedProcess() throws InterruptedException {
+      assertThat(started.await(1, TimeUnit.MINUTES)).isTrue();
+      assertThat(ProcessReaper.count()).isEqualTo(initialCount + 1);
+
+      return ProcessHandle.current().children().filter(child -> !initialChildren.contains(child)).findFirst().orElseThrow();
+    }
+  }
+
   @Nested
   class GivenACompiler {
     List<String> errors = List.of();
@@ -39,6 +296,22 @@ public class SCSSCompilerTest {
       assertThat(deprecations).isEmpty();
     }
 
+    @Test
+    void shouldCompileSourceToString() throws IOException {
+      String result = compiler.asString("@use \"colors\";\n.container { color: colors.$primary-color; }", Syntax.SCSS);
+
+      assertThat(result).isEqualTo(".container{color:red}\n");
+      assertThat(errors).isEmpty();
+    }
+
+    @Test
+    void shouldCompileIndentedSourceToString() throws IOException {
+      String result = compiler.asString("@use \"colors\"\n.container\n  color: colors.$primary-color\n", Syntax.INDENTED);
+
+      assertThat(result).isEqualTo(".container{color:red}\n");
+      assertThat(errors).isEmpty();
+    }
+
     @Test
     void shouldCompileToURIString() throws IOException {
       String result = compiler.asURIString(root.resolve("org/int4/scss/styles.scss"));
@@ -59,6 +332,97 @@ public class SCSSCompilerTest {
       assertThat(deprecations).isEmpty();
     }
 
+    @Test
+    void shouldCompileToStream() throws IOException {
+      List<String> lines = new ArrayList<>();
+
+      try(InputStream stream = compiler.asStream(root.resolve("org/int4/scss/warn.scss"), lines::add)) {
+        assertThat(new String(stream.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(".tilt{-wekbit-transform:rotate(15deg);-ms-transform:rotate(15deg);transform:rotate(15deg)}\n");
+      }
+
+      assertThat(lines).startsWith("WARNING: Unknown prefix wekbit.").endsWith("", (String)null);
+    }
+
+    @Test
+    void shouldCompileToCompiledStylesheet() throws IOException {
+      CompiledStylesheet stylesheet = compiler.compile(root.resolve("org/int4/scss/styles.scss"));
+
+      assertThat(stylesheet.asString()).isEqualTo(".container{color:red}.container .header{background-color:red}\n");
+      assertThat(stylesheet.asDataURI().toString()).isEqualTo("data:text/css;charset=UTF-8;base64,LmNvbnRhaW5lcntjb2xvcjpyZWR9LmNvbnRhaW5lciAuaGVhZGVye2JhY2tncm91bmQtY29sb3I6cmVkfQo=");
+      assertThat(stylesheet).isEqualTo(compiler.compile(".container{color:red}.container .header{background-color:red}", Syntax.SCSS));
+      assertThat(errors).isEmpty();
+    }
+
+    @Test
+    void shouldCompileToBuffersAndChannels(@TempDir Path output) throws IOException {
+      String expected = ".container{color:red}.container .header{background-color:red}\n";
+      Path scss = root.resolve("org/int4/scss/styles.scss");
+      Path css = output.resolve("css/styles.css");
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+      assertThat(StandardCharsets.UTF_8.decode(compiler.asByteBuffer(scss, true)).toString()).isEqualTo(expected);
+      assertThat(StandardCharsets.UTF_8.decode(compiler.asByteBuffer(scss, false)).toString()).isEqualTo(expected);
+      assertThat(compiler.compileTo(scss, Channels.newChannel(stream))).isEqualTo(expected.length());
+      assertThat(stream.toString(StandardCharsets.UTF_8)).isEqualTo(expected);
+      assertThat(compiler.compileTo(scss, css)).isTrue();
+      assertThat(compiler.compileTo(scss, css)).isFalse();
+      assertThat(Files.readString(css)).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldCompileGeneratedCorpus(@TempDir Path directory) throws IOException {
+      CorpusGenerator.Corpus corpus = CorpusGenerator.builder().depth(4).fanOut(3).mixins(3).loops(2).size(64 * 1024).build().generate(directory);
+      CompiledStylesheet stylesheet = SCSSCompiler.builder(corpus.root()).build().compile(corpus.entry());
+
+      assertThat(stylesheet.asString()).contains(".main-r0-l1-c3{", ".l4m2-r0-l0-c0{", ":hover{");
+    }
+
+    @Test
+    void shouldReportProgressAndStatsToListener(@TempDir Path output) throws IOException {
+      List<String> calls = new CopyOnWriteArrayList<>();
+      List<CompileStats> stats = new CopyOnWriteArrayList<>();
+      SCSSCompiler compiler = SCSSCompiler.builder(root)
+        .warningsHandler(warnings -> {})
+        .listener(new CompileListener() {
+          @Override
+          public void started(long id, String entry) {
+            calls.add("started " + Path.of(entry).getFileName());
+          }
+
+          @Override
+          public void engineAcquired(long id) {
+            calls.add("engineAcquired");
+          }
+
+          @Override
+          public void firstByte(long id) {
+            calls.add("firstByte");
+          }
+
+          @Override
+          public void completed(long id, CompileStats compileStats) {
+            calls.add("completed");
+            stats.add(compileStats);
+          }
+        })
+        .build();
+
+      compiler.asString(root.resolve("org/int4/scss/warn.scss"));
+
+      assertThat(calls).containsExactly("started warn.scss", "engineAcquired", "firstByte", "completed");
+      assertThat(stats).singleElement().satisfies(s -> {
+        assertThat(s.outputBytes()).isEqualTo(".tilt{-wekbit-transform:rotate(15deg);-ms-transform:rotate(15deg);transform:rotate(15deg)}\n".length());
+        assertThat(s.loadedFiles()).isEqualTo(1);
+        assertThat(s.warnings()).isEqualTo(1);
+        assertThat(s.errors()).isZero();
+        assertThat(s.wallTime()).isPositive();
+      });
+
+      Map<Path, CompileResult> results = compiler.compileAll(Map.of(root.resolve("org/int4/scss/bad.scss"), output.resolve("bad.css")));
+
+      assertThat(results.values()).singleElement().satisfies(result -> assertThat(result.stats().errors()).isEqualTo(1));
+    }
+
     @Test
     void shouldProvideErrors() throws IOException {
       String result = compiler.asString(root.resolve("org/int4/scss/missing.scss"));
@@ -0,0 +1,150 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SCSSEngineTest {
+  private final AtomicInteger starts = new AtomicInteger();
+  private final EmbeddedCompiler.ProcessFactory processFactory = () -> {
+    starts.incrementAndGet();
+
+    throw new IOException("not started in tests");
+  };
+
+  private SCSSEngine engine;
+
+  @AfterEach
+  void afterEach() {
+    if(engine != null) {
+      engine.close();
+    }
+  }
+
+  @Test
+  void shouldReuseReleasedCompilers() throws IOException {
+    engine = SCSSEngine.builder().maxProcesses(2).build(processFactory, SCSSCompiler.EXECUTOR);
+
+    EmbeddedCompiler compiler;
+
+    try(SCSSEngine.Lease lease = engine.acquire()) {
+      compiler = lease.compiler();
+    }
+
+    try(SCSSEngine.Lease lease = engine.acquire()) {
+      assertThat(lease.compiler()).isSameAs(compiler);
+    }
+
+    assertThat(engine.getProcessCount()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldNotExceedMaximumProcesses() throws IOException {
+    engine = SCSSEngine.builder().maxProcesses(2).maxCompilationsPerProcess(1).acquireTimeout(Duration.ofMillis(50)).build(processFactory, SCSSCompiler.EXECUTOR);
+
+    try(SCSSEngine.Lease lease1 = engine.acquire(); SCSSEngine.Lease lease2 = engine.acquire()) {
+      assertThat(lease1.compiler()).isNotSameAs(lease2.compiler());
+      assertThat(engine.getProcessCount()).isEqualTo(2);
+
+      assertThatThrownBy(() -> engine.acquire())
+        .isInstanceOf(IOException.class)
+        .hasMessageStartingWith("Timed out");
+    }
+  }
+
+  @Test
+  void shouldShareBusyProcessesBeforeStartingNewOnes() throws IOException {
+    engine = SCSSEngine.builder().maxProcesses(2).maxCompilationsPerProcess(3).build(processFactory, SCSSCompiler.EXECUTOR);
+
+    try(
+      SCSSEngine.Lease lease1 = engine.acquire();
+      SCSSEngine.Lease lease2 = engine.acquire();
+      SCSSEngine.Lease lease3 = engine.acquire();
+      SCSSEngine.Lease lease4 = engine.acquire()
+    ) {
+      assertThat(lease2.compiler()).isSameAs(lease1.compiler());
+      assertThat(lease3.compiler()).isSameAs(lease1.compiler());
+      assertThat(lease4.compiler()).isNotSameAs(lease1.compiler());
+      assertThat(engine.getProcessCount()).isEqualTo(2);
+      assertThat(engine.getActiveCompilations()).isEqualTo(4);
+    }
+
+    assertThat(engine.getActiveCompilations()).isZero();
+  }
+
+  @Test
+  void shouldQueueCallersUntilACompilerIsReleased() throws Exception {
+    engine = SCSSEngine.builder().maxProcesses(1).maxCompilationsPerProcess(1).build(processFactory, SCSSCompiler.EXECUTOR);
+
+    SCSSEngine.Lease lease = engine.acquire();
+    CompletableFuture<EmbeddedCompiler> waiter = CompletableFuture.supplyAsync(() -> {
+      try(SCSSEngine.Lease queuedLease = engine.acquire()) {
+        return queuedLease.compiler();
+      }
+      catch(IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    while(engine.getQueueLength() == 0) {
+      Thread.sleep(1);
+    }
+
+    assertThat(waiter).isNotDone();
+
+    lease.close();
+
+    assertThat(waiter.get(5, TimeUnit.SECONDS)).isSameAs(lease.compiler());
+  }
+
+  @Test
+  void shouldEvictIdleCompilers() throws Exception {
+    engine = SCSSEngine.builder().idleTimeout(Duration.ofMillis(20)).build(processFactory, SCSSCompiler.EXECUTOR);
+
+    engine.acquire().close();
+
+    assertThat(engine.getProcessCount()).isEqualTo(1);
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+    while(engine.getProcessCount() > 0 && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+
+    assertThat(engine.getProcessCount()).isZero();
+  }
+
+  @Test
+  void shouldKeepMinimumProcessesWhenIdle() throws Exception {
+    engine = SCSSEngine.builder().minProcesses(1).idleTimeout(Duration.ZERO).build(processFactory, SCSSCompiler.EXECUTOR);
+
+    Thread.sleep(50);
+
+    assertThat(engine.getProcessCount()).isEqualTo(1);
+    assertThat(starts).hasValue(1);
+  }
+
+  @Test
+  void shouldRejectAcquireWhenClosed() {
+    engine = SCSSEngine.builder().build(processFactory, SCSSCompiler.EXECUTOR);
+    engine.close();
+
+    assertThatThrownBy(() -> engine.acquire()).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void shouldRejectInvalidSettings() {
+    assertThatThrownBy(() -> SCSSEngine.builder().minProcesses(-1)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> SCSSEngine.builder().maxProcesses(0)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> SCSSEngine.builder().idleTimeout(Duration.ofSeconds(-1))).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> SCSSEngine.builder().minProcesses(3).maxProcesses(2).build(processFactory, SCSSCompiler.EXECUTOR)).isInstanceOf(IllegalStateException.class);
+  }
+}
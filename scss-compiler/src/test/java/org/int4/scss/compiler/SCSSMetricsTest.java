@@ -0,0 +1,42 @@
+package org.int4.scss.compiler;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SCSSMetricsTest {
+  private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+  @Test
+  void shouldBeReadableAsPlatformMBean() throws Exception {
+    ObjectName name = new ObjectName(SCSSMetrics.OBJECT_NAME);
+    long succeeded = SCSSMetrics.INSTANCE.getSucceededCompilations();
+    long hits = SCSSMetrics.INSTANCE.getCacheHits();
+
+    SCSSMetrics.register();
+    SCSSMetrics.register();
+
+    try {
+      SCSSMetrics.INSTANCE.succeeded(1_000_000);
+      SCSSMetrics.INSTANCE.cacheLookup(true);
+
+      assertThat(server.isRegistered(name)).isTrue();
+      assertThat(server.getAttribute(name, "SucceededCompilations")).isEqualTo(succeeded + 1);
+      assertThat(server.getAttribute(name, "CacheHits")).isEqualTo(hits + 1);
+      assertThat((Double)server.getAttribute(name, "LatencyMaxMillis")).isGreaterThanOrEqualTo(1.0);
+      assertThat((Double)server.getAttribute(name, "CacheHitRatio")).isBetween(0.0, 1.0);
+      assertThat(server.getAttribute(name, "LiveProcesses")).isInstanceOf(Integer.class);
+    }
+    finally {
+      SCSSMetrics.unregister();
+      SCSSMetrics.unregister();
+    }
+
+    assertThat(server.isRegistered(name)).isFalse();
+  }
+}
@@ -0,0 +1,99 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SCSSWatcherTest {
+  private final BlockingQueue<String> changes = new LinkedBlockingQueue<>();
+
+  @TempDir
+  Path root;
+
+  Path styles;
+  Path colors;
+  Path other;
+  SCSSWatcher watcher;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    styles = Files.writeString(root.resolve("styles.scss"), "@use 'colors';\n.a { color: colors.$primary; }");
+    colors = Files.writeString(root.resolve("_colors.scss"), "$primary: red;");
+    other = Files.writeString(root.resolve("other.scss"), ".b { color: blue; }");
+    watcher = SCSSWatcher.builder(SCSSCompiler.of(root)).debounce(Duration.ofMillis(50)).build();
+    watcher.addListener((scss, css) -> changes.add(root.relativize(scss) + ": " + css));
+  }
+
+  @AfterEach
+  void afterEach() {
+    watcher.close();
+  }
+
+  @Test
+  void shouldRecompileStylesheetsAffectedByChangedDependency() throws Exception {
+    assertThat(watcher.asString(styles)).isEqualTo(".a{color:red}\n");
+    assertThat(watcher.asString(other)).isEqualTo(".b{color:blue}\n");
+
+    Files.writeString(colors, "$primary: green;");
+
+    assertThat(changes.poll(30, TimeUnit.SECONDS)).isEqualTo("styles.scss: .a{color:green}\n");
+    assertThat(watcher.asString(styles)).isEqualTo(".a{color:green}\n");
+    assertThat(changes.poll(500, TimeUnit.MILLISECONDS)).isNull();  // other.scss is not affected
+  }
+
+  @Test
+  void shouldRecompileAfterErrorWasFixed() throws Exception {
+    Files.writeString(colors, "$primary: ;");
+
+    assertThatThrownBy(() -> watcher.asString(styles)).isInstanceOf(SCSSProcessingException.class);
+
+    Files.writeString(colors, "$primary: green;");
+
+    assertThat(changes.poll(30, TimeUnit.SECONDS)).isEqualTo("styles.scss: .a{color:green}\n");
+  }
+
+  @Test
+  void shouldWatchAndRecompileOnExecutorOfCompiler() throws Exception {
+    AtomicInteger executions = new AtomicInteger();
+    SCSSCompiler compiler = SCSSCompiler.builder(root)
+      .executor(runnable -> {
+        executions.incrementAndGet();
+        SCSSCompiler.EXECUTOR.execute(runnable);
+      })
+      .build();
+
+    try(SCSSWatcher watcher = SCSSWatcher.builder(compiler).debounce(Duration.ofMillis(50)).build()) {
+      watcher.addListener((scss, css) -> changes.add(root.relativize(scss) + ": " + css));
+
+      assertThat(executions).hasValue(1);  // the watch loop
+      assertThat(watcher.asString(styles)).isEqualTo(".a{color:red}\n");
+
+      Files.writeString(colors, "$primary: green;");
+
+      assertThat(changes.poll(30, TimeUnit.SECONDS)).isEqualTo("styles.scss: .a{color:green}\n");
+      assertThat(executions.get()).isGreaterThanOrEqualTo(2);  // and background compilations
+    }
+  }
+
+  @Test
+  void shouldNotUseWatcherAfterClose() {
+    watcher.close();
+
+    assertThatThrownBy(() -> watcher.asString(styles))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessage("Watcher was closed");
+  }
+}
@@ -0,0 +1,65 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.int4.scss.compiler.SassValue.SassColor;
+import org.int4.scss.compiler.SassValue.SassList;
+import org.int4.scss.compiler.SassValue.SassList.Separator;
+import org.int4.scss.compiler.SassValue.SassMap;
+import org.int4.scss.compiler.SassValue.SassNumber;
+import org.int4.scss.compiler.SassValue.SassString;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SassValueCodecTest {
+
+  @Test
+  void shouldRoundTripValues() throws IOException {
+    Map<SassValue, SassValue> entries = new LinkedHashMap<>();
+
+    entries.put(new SassString("primary", false), SassColor.rgb(255, 0, 0, 1));
+    entries.put(new SassString("secondary", false), new SassColor("hsl", 120.0, null, 50.0, 0.5));
+
+    List<SassValue> values = List.of(
+      new SassString("Helvetica Neue", true),
+      SassNumber.of(16, "px"),
+      new SassNumber(9.81, List.of("m"), List.of("s", "s")),
+      new SassList(List.of(SassNumber.of(1), SassValue.NULL), Separator.SPACE, true),
+      new SassMap(entries),
+      SassValue.TRUE,
+      SassValue.FALSE,
+      SassValue.NULL
+    );
+
+    for(SassValue value : values) {
+      assertThat(SassValueCodec.decode(new ProtobufReader(SassValueCodec.encode(value).toByteArray()))).isEqualTo(value);
+    }
+  }
+
+  @Test
+  void shouldDecodeArgumentListsAsLists() throws IOException {
+    ProtobufWriter argumentList = new ProtobufWriter().writeMessage(10, new ProtobufWriter()
+      .writeUInt(1, 42)
+      .writeUInt(2, Separator.COMMA.ordinal())
+      .writeMessage(3, SassValueCodec.encode(SassNumber.of(1)))
+      .writeMessage(3, SassValueCodec.encode(SassNumber.of(2)))
+    );
+
+    assertThat(SassValueCodec.decode(new ProtobufReader(argumentList.toByteArray())))
+      .isEqualTo(new SassList(List.of(SassNumber.of(1), SassNumber.of(2)), Separator.COMMA, false));
+  }
+
+  @Test
+  void shouldRejectCalculations() {
+    ProtobufWriter calculation = new ProtobufWriter().writeMessage(12, new ProtobufWriter().writeString(1, "calc"));
+
+    assertThatThrownBy(() -> SassValueCodec.decode(new ProtobufReader(calculation.toByteArray())))
+      .isInstanceOf(IOException.class)
+      .hasMessageContaining("Calculations are not supported");
+  }
+}
@@ -0,0 +1,201 @@
+package org.int4.scss.compiler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SingleFlightTest {
+  private final SingleFlight<String, String> flights = new SingleFlight<>();
+  private final AtomicInteger executions = new AtomicInteger();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final List<Thread> callers = new ArrayList<>();
+
+  private final SingleFlight.Task<String> blockingTask = () -> {
+    executions.incrementAndGet();
+
+    try {
+      release.await();
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      throw new InterruptedIOException();
+    }
+
+    return "result";
+  };
+
+  @Test
+  void shouldExecuteConcurrentCallsWithSameKeyOnce() throws Exception {
+    List<CompletableFuture<String>> futures = new ArrayList<>();
+
+    for(int i = 0; i < 10; i++) {
+      futures.add(call("a", blockingTask));
+    }
+
+    awaitExecutions(1);
+    awaitCallersWaiting();
+    release.countDown();
+
+    for(CompletableFuture<String> future : futures) {
+      assertThat(future.get(10, TimeUnit.SECONDS)).isEqualTo("result");
+    }
+
+    assertThat(executions).hasValue(1);
+    assertThat(flights.size()).isZero();
+  }
+
+  @Test
+  void shouldExecuteCallsWithDifferentKeysSeparately() throws Exception {
+    CompletableFuture<String> a = call("a", blockingTask);
+    CompletableFuture<String> b = call("b", blockingTask);
+
+    awaitExecutions(2);
+    release.countDown();
+
+    assertThat(a.get(10, TimeUnit.SECONDS)).isEqualTo("result");
+    assertThat(b.get(10, TimeUnit.SECONDS)).isEqualTo("result");
+  }
+
+  @Test
+  void shouldExecuteAgainAfterCompletion() throws IOException {
+    release.countDown();
+
+    assertThat(flights.execute("a", SCSSCompiler.EXECUTOR, blockingTask)).isEqualTo("result");
+    assertThat(flights.execute("a", SCSSCompiler.EXECUTOR, blockingTask)).isEqualTo("result");
+    assertThat(executions).hasValue(2);
+  }
+
+  @Test
+  void shouldNotAffectOtherCallersWhenInterrupted() throws Exception {
+    CompletableFuture<Throwable> interrupted = new CompletableFuture<>();
+    Thread thread = Thread.ofVirtual().start(() -> {
+      try {
+        flights.execute("a", SCSSCompiler.EXECUTOR, blockingTask);
+        interrupted.complete(null);
+      }
+      catch(Throwable t) {
+        interrupted.complete(t);
+      }
+    });
+
+    awaitExecutions(1);
+
+    CompletableFuture<String> other = call("a", blockingTask);
+
+    awaitCallersWaiting();
+    thread.interrupt();
+
+    assertThat(interrupted.get(10, TimeUnit.SECONDS)).isInstanceOf(InterruptedIOException.class);
+    assertThat(other).isNotDone();
+
+    release.countDown();
+
+    assertThat(other.get(10, TimeUnit.SECONDS)).isEqualTo("result");
+    assertThat(executions).hasValue(1);
+  }
+
+  @Test
+  void shouldInterruptExecutionWhenAllCallersAreInterrupted() throws Exception {
+    CompletableFuture<String> caller = call("a", blockingTask);
+
+    awaitExecutions(1);
+    awaitCallersWaiting();
+    callers.get(0).interrupt();
+
+    assertThatThrownBy(() -> caller.get(10, TimeUnit.SECONDS)).cause().isInstanceOf(InterruptedIOException.class);
+    assertThat(flights.size()).isZero();
+
+    release.countDown();
+
+    assertThat(flights.execute("a", SCSSCompiler.EXECUTOR, blockingTask)).isEqualTo("result");
+    assertThat(executions).hasValue(2);
+  }
+
+  @Test
+  void shouldExecuteAgainForOtherCallersWhenCallerRunningTaskIsInterrupted() throws Exception {
+    CompletableFuture<Throwable> interrupted = new CompletableFuture<>();
+    Thread thread = Thread.ofVirtual().start(() -> {
+      try {
+        flights.execute("a", Runnable::run, blockingTask);
+        interrupted.complete(null);
+      }
+      catch(Throwable t) {
+        interrupted.complete(t);
+      }
+    });
+
+    awaitExecutions(1);
+
+    CompletableFuture<String> other = call("a", blockingTask);
+
+    awaitCallersWaiting();
+    thread.interrupt();
+
+    assertThat(interrupted.get(10, TimeUnit.SECONDS)).isInstanceOf(IOException.class).cause().isInstanceOf(InterruptedIOException.class);
+    awaitExecutions(2);
+    assertThat(other).isNotDone();
+
+    release.countDown();
+
+    assertThat(other.get(10, TimeUnit.SECONDS)).isEqualTo("result");
+    assertThat(executions).hasValue(2);
+  }
+
+  @Test
+  void shouldShareFailures() {
+    assertThatThrownBy(() -> flights.execute("a", SCSSCompiler.EXECUTOR, () -> { throw new IOException("boom"); }))
+      .isInstanceOf(IOException.class)
+      .hasMessage("boom")
+      .cause().hasMessage("boom");
+
+    assertThatThrownBy(() -> flights.execute("a", SCSSCompiler.EXECUTOR, () -> { throw new IllegalStateException("bad"); }))
+      .isExactlyInstanceOf(IllegalStateException.class)
+      .hasMessage("bad");
+
+    assertThat(flights.size()).isZero();
+  }
+
+  private CompletableFuture<String> call(String key, SingleFlight.Task<String> task) {
+    CompletableFuture<String> future = new CompletableFuture<>();
+
+    callers.add(Thread.ofVirtual().start(() -> {
+      try {
+        future.complete(flights.execute(key, SCSSCompiler.EXECUTOR, task));
+      }
+      catch(Throwable t) {
+        future.completeExceptionally(t);
+      }
+    }));
+
+    return future;
+  }
+
+  private void awaitExecutions(int count) throws InterruptedException {
+    for(int i = 0; i < 1000 && executions.get() < count; i++) {
+      Thread.sleep(10);
+    }
+
+    assertThat(executions).hasValue(count);
+  }
+
+  private void awaitCallersWaiting() throws InterruptedException {
+    for(Thread caller : callers) {
+      for(int i = 0; i < 1000 && caller.getState() != Thread.State.WAITING; i++) {
+        Thread.sleep(10);
+      }
+
+      assertThat(caller.getState()).isEqualTo(Thread.State.WAITING);
+    }
+  }
+}